@@ -0,0 +1,21 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.redis.annotation.CacheLock;
+import com.lee.distributedlock.util.redis.annotation.CacheParam;
+import com.lee.distributedlock.util.redis.annotation.LockBackendType;
+
+/**
+ * 与 BookController 相同的加锁方式，用于测试 LockMethodInterceptor + LockKeyGenerator 的完整路径
+ */
+public class BenchmarkBookService {
+
+    @CacheLock(prefix = "books")
+    public String query(@CacheParam(name = "token") String token) {
+        return "success - " + token;
+    }
+
+    @CacheLock(prefix = "books", backend = LockBackendType.MEMORY)
+    public String queryInMemory(@CacheParam(name = "token") String token) {
+        return "success - " + token;
+    }
+}
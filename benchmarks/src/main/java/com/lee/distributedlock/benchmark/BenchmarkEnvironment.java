@@ -0,0 +1,158 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.backend.InMemoryLockBackend;
+import com.lee.distributedlock.util.backend.LockBackends;
+import com.lee.distributedlock.util.backend.RedisLockBackend;
+import com.lee.distributedlock.util.metrics.HotKeyProfiler;
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.redis.HeldKeyCache;
+import com.lee.distributedlock.util.redis.LocalLockCoalescer;
+import com.lee.distributedlock.util.redis.LockReleaseSubscriber;
+import com.lee.distributedlock.util.redis.RedisFairLock;
+import com.lee.distributedlock.util.redis.RedisLockHelper;
+import com.lee.distributedlock.util.redis.RedisReadWriteLock;
+import com.lee.distributedlock.util.redis.RedisSemaphore;
+import com.lee.distributedlock.util.redis.RedisSingleFlight;
+import com.lee.distributedlock.util.redis.aspect.LockMethodInterceptor;
+import com.lee.distributedlock.util.redis.keyGenerator.LockKeyGenerator;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import com.lee.distributedlock.util.zk.DistributedLock_zk;
+import org.apache.curator.test.TestingServer;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 基准测试的运行环境：内嵌 redis + 进程内 zookeeper（TestingServer）+ 只包含锁相关 bean 的 spring 容器
+ * <p>
+ * 指定 -Dbenchmark.redis.port=6379 时改用本机已启动的 redis（内嵌 redis 的版本较旧，读写锁/信号量脚本需要 3.2+）
+ * <p>
+ * newNode() 再启动一个连接同一 redis 的独立容器（独立的看门狗、释放订阅、本地合并层），模拟另一个客户端节点
+ */
+public final class BenchmarkEnvironment implements AutoCloseable {
+
+    static final String REDIS_PORT_PROPERTY = "benchmark.redis.port";
+
+    private final RedisServer redisServer;
+    private final TestingServer zkServer;
+    private final AnnotationConfigApplicationContext context;
+    private final DistributedLock_zk zkLock;
+
+    private BenchmarkEnvironment(RedisServer redisServer, TestingServer zkServer,
+                                 AnnotationConfigApplicationContext context, DistributedLock_zk zkLock) {
+        this.redisServer = redisServer;
+        this.zkServer = zkServer;
+        this.context = context;
+        this.zkLock = zkLock;
+    }
+
+    public static BenchmarkEnvironment start() throws Exception {
+        RedisServer redisServer = null;
+        if (System.getProperty(REDIS_PORT_PROPERTY) == null) {
+            int port = freePort();
+            redisServer = new RedisServer(port);
+            redisServer.start();
+            System.setProperty(REDIS_PORT_PROPERTY, String.valueOf(port));
+        }
+        TestingServer zkServer = new TestingServer(true);
+
+        AnnotationConfigApplicationContext context = newContext();
+        DistributedLock_zk zkLock = new DistributedLock_zk(zkServer.getConnectString());
+        zkLock.init();
+        return new BenchmarkEnvironment(redisServer, zkServer, context, zkLock);
+    }
+
+    private static AnnotationConfigApplicationContext newContext() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.register(BenchmarkConfiguration.class, LockMetrics.class, HotKeyProfiler.class, LeaseWatchdog.class,
+                LockReleaseSubscriber.class, HeldKeyCache.class, LocalLockCoalescer.class, RedisLockHelper.class, RedisReadWriteLock.class,
+                RedisSemaphore.class, RedisSingleFlight.class, RedisFairLock.class,
+                RedisLockBackend.class, InMemoryLockBackend.class, LockBackends.class,
+                LockKeyGenerator.class, LockMethodInterceptor.class, BenchmarkBookService.class);
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * 启动一个新的客户端节点：连接同一 redis 的独立容器，用完由调用方关闭
+     */
+    public AnnotationConfigApplicationContext newNode() {
+        return newContext();
+    }
+
+    public String zkConnectString() {
+        return zkServer.getConnectString();
+    }
+
+    /**
+     * 重启内嵌 redis，数据不持久化，重启后所有锁和 fencing token 计数器都会丢失
+     *
+     * @return 使用外部 redis 时不重启，返回false
+     */
+    public boolean restartRedis() {
+        if (redisServer == null) {
+            return false;
+        }
+        redisServer.stop();
+        redisServer.start();
+        return true;
+    }
+
+    /**
+     * 重启进程内 zookeeper，客户端会话在超时前重连即保留临时节点
+     */
+    public void restartZookeeper() throws Exception {
+        zkServer.restart();
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public DistributedLock_zk zkLock() {
+        return zkLock;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zkLock.close();
+        context.close();
+        zkServer.close();
+        if (redisServer != null) {
+            redisServer.stop();
+            System.clearProperty(REDIS_PORT_PROPERTY);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    static class BenchmarkConfiguration {
+
+        @Bean
+        public LettuceConnectionFactory redisConnectionFactory(Environment environment) {
+            int port = environment.getRequiredProperty(REDIS_PORT_PROPERTY, Integer.class);
+            return new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        }
+
+        @Bean
+        public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory connectionFactory) {
+            return new StringRedisTemplate(connectionFactory);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.metrics.HotKeyProfiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HotKeyProfiler 每次调用的开销（acquired + held），不需要 redis
+ * hotKey：所有线程记录同一个 key；zipf：少数 key 占大部分调用，其余 key 均匀分布在 10 万个 key 中
+ * <p>
+ * java -jar target/benchmarks.jar HotKeyProfilerBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class HotKeyProfilerBenchmark {
+
+    private static final int KEYS = 100_000;
+    private static final int HOT_KEYS = 16;
+
+    @State(Scope.Benchmark)
+    public static class Env {
+        HotKeyProfiler profiler;
+        String[] keys;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            profiler = new HotKeyProfiler(true, 20, 4096, 60);
+            keys = new String[KEYS];
+            for (int i = 0; i < KEYS; i++) {
+                keys[i] = "book:" + i;
+            }
+        }
+    }
+
+    @Benchmark
+    public void hotKey(Env env) {
+        long start = env.profiler.start();
+        env.profiler.acquired("book:hot", start, true);
+        env.profiler.held("book:hot", start);
+    }
+
+    @Benchmark
+    public void zipf(Env env) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // 80% 的调用落在 16 个热点 key 上
+        String key = env.keys[random.nextInt(10) < 8 ? random.nextInt(HOT_KEYS) : random.nextInt(KEYS)];
+        long start = env.profiler.start();
+        env.profiler.acquired(key, start, true);
+        env.profiler.held(key, start);
+    }
+}
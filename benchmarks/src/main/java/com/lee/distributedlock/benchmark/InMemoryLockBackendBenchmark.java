@@ -0,0 +1,78 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.backend.InMemoryLockBackend;
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InMemoryLockBackend 一次加锁 + 解锁的开销（含看门狗登记），不需要 redis
+ * uncontended：每个线程使用自己的 key；hotKey：所有线程竞争同一个 key，只尝试一次
+ * <p>
+ * java -jar target/benchmarks.jar InMemoryLockBackendBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryLockBackendBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Env {
+        LeaseWatchdog watchdog;
+        InMemoryLockBackend backend;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            watchdog = new LeaseWatchdog(100, 1, 65536, 256, LockMetrics.disabled());
+            backend = new InMemoryLockBackend(64, watchdog);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            watchdog.destroy();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        String key;
+        String owner;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            key = "book:" + Thread.currentThread().getId();
+            owner = "owner-" + Thread.currentThread().getId();
+        }
+    }
+
+    @Benchmark
+    public boolean uncontended(Env env, Client client) {
+        env.backend.tryAcquire(client.key, client.owner, 5, 0, TimeUnit.SECONDS);
+        return env.backend.release(client.key, client.owner);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean hotKey(Env env, Client client) {
+        if (env.backend.tryAcquire("book:hot", client.owner, 5, 0, TimeUnit.SECONDS) > 0) {
+            return env.backend.release("book:hot", client.owner);
+        }
+        return false;
+    }
+}
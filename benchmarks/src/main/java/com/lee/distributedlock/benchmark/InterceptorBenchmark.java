@@ -0,0 +1,79 @@
+package com.lee.distributedlock.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 被 @CacheLock 注解的方法经过 AOP 代理的完整路径：LockMethodInterceptor + LockKeyGenerator + RedisLockHelper
+ * uncontended：每个线程使用自己的 token；hotKey：所有线程使用同一个 token，失败的调用以“重复提交”异常返回；
+ * inMemory：同样的路径换成 backend = MEMORY，即去掉网络往返后拦截器本身的开销
+ * <p>
+ * java -jar target/benchmarks.jar InterceptorBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterceptorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Env {
+        BenchmarkEnvironment environment;
+        BenchmarkBookService service;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            environment = BenchmarkEnvironment.start();
+            service = environment.bean(BenchmarkBookService.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            environment.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        String token;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            token = "token-" + Thread.currentThread().getId();
+        }
+    }
+
+    @Benchmark
+    public String interceptor_uncontended(Env env, Client client) {
+        return env.service.query(client.token);
+    }
+
+    @Benchmark
+    public String interceptor_inMemory_uncontended(Env env, Client client) {
+        return env.service.queryInMemory(client.token);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String interceptor_hotKey(Env env) {
+        try {
+            return env.service.query("hot");
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+    }
+}
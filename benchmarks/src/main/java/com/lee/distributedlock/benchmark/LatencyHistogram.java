@@ -0,0 +1,68 @@
+package com.lee.distributedlock.benchmark;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数-线性的延迟直方图，内存固定，样本数不限
+ * 每个 [2^k, 2^(k+1)) 区间等分成 64 个桶，小于64ns的值单独计数，百分位的相对误差不超过 1/64；
+ * record() 只做一次原子自增，多线程同时记录不需要加锁
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(Long.SIZE * SUB_BUCKETS);
+
+    void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0L, nanos)));
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param p 百分位，0~1
+     * @return 该百分位所在桶的上界，单位: 纳秒；没有样本时返回0
+     */
+    long percentile(double p) {
+        long total = this.count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(counts.length() - 1);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long valueOf(int index) {
+        int group = index >>> SUB_BUCKET_BITS;
+        int sub = index & (SUB_BUCKETS - 1);
+        if (group == 0) {
+            return sub;
+        }
+        int shift = group - 1;
+        return ((long) (SUB_BUCKETS + sub) << shift) + ((1L << shift) - 1);
+    }
+}
@@ -0,0 +1,50 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.redis.annotation.CacheLock;
+import com.lee.distributedlock.util.redis.annotation.CacheParam;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+
+/**
+ * 预编译 key 计划之前的 LockKeyGenerator 实现，仅作为基准测试的对照组
+ * 每次调用都 getParameters()、逐个参数查注解，实体对象每次 getDeclaredFields() + setAccessible()
+ */
+public final class LegacyLockKeyGenerator {
+
+    private LegacyLockKeyGenerator() {
+    }
+
+    public static String getLockKey(Method method, Object[] args) {
+        CacheLock lockAnnotation = method.getAnnotation(CacheLock.class);
+        final Parameter[] parameters = method.getParameters();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < parameters.length; i++) {
+            final CacheParam annotation = parameters[i].getAnnotation(CacheParam.class);
+            if (annotation == null) {
+                continue;
+            }
+            builder.append(lockAnnotation.delimiter()).append(args[i]);
+        }
+        if (StringUtils.isEmpty(builder.toString())) {
+            final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+            for (int i = 0; i < parameterAnnotations.length; i++) {
+                final Object object = args[i];
+                final Field[] fields = object.getClass().getDeclaredFields();
+                for (Field field : fields) {
+                    final CacheParam annotation = field.getAnnotation(CacheParam.class);
+                    if (annotation == null) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    builder.append(lockAnnotation.delimiter()).append(ReflectionUtils.getField(field, object));
+                }
+            }
+        }
+        return lockAnnotation.prefix() + builder.toString();
+    }
+}
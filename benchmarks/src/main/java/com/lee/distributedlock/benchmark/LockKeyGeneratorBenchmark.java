@@ -0,0 +1,98 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.redis.annotation.CacheLock;
+import com.lee.distributedlock.util.redis.annotation.CacheParam;
+import com.lee.distributedlock.util.redis.keyGenerator.LockKeyGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LockKeyGenerator 预编译 key 计划 vs 旧的逐次反射实现
+ * <p>
+ * java -jar target/benchmarks.jar LockKeyGeneratorBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockKeyGeneratorBenchmark {
+
+    private final LockKeyGenerator generator = new LockKeyGenerator();
+
+    private Method paramMethod;
+    private Object[] paramArgs;
+    private Method entityMethod;
+    private Object[] entityArgs;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        paramMethod = SampleService.class.getMethod("query", String.class);
+        paramArgs = new Object[]{"SO1008"};
+        entityMethod = SampleService.class.getMethod("submit", Order.class, String.class);
+        entityArgs = new Object[]{new Order("SO1008", 500L, "N", "remark"), "ignored"};
+    }
+
+    @Benchmark
+    public String cacheParam_legacy() {
+        return LegacyLockKeyGenerator.getLockKey(paramMethod, paramArgs);
+    }
+
+    @Benchmark
+    public String cacheParam_plan() {
+        return generator.getLockKey(paramMethod, paramArgs);
+    }
+
+    @Benchmark
+    public String entityFields_legacy() {
+        return LegacyLockKeyGenerator.getLockKey(entityMethod, entityArgs);
+    }
+
+    @Benchmark
+    public String entityFields_plan() {
+        return generator.getLockKey(entityMethod, entityArgs);
+    }
+
+    public static class SampleService {
+
+        @CacheLock(prefix = "books")
+        public String query(@CacheParam(name = "token") String token) {
+            return token;
+        }
+
+        @CacheLock(prefix = "orders")
+        public String submit(Order order, String remark) {
+            return order.orderNo;
+        }
+    }
+
+    public static class Order {
+
+        @CacheParam(name = "orderNo")
+        private final String orderNo;
+        @CacheParam(name = "amount")
+        private final Long amount;
+        @CacheParam(name = "type")
+        private final String type;
+        private final String remark;
+
+        Order(String orderNo, Long amount, String type, String remark) {
+            this.orderNo = orderNo;
+            this.amount = amount;
+            this.type = type;
+            this.remark = remark;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.redis.LockOwners;
+import com.lee.distributedlock.util.redis.LockValues;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 锁持有者标识与 lockNotSafely() 锁的值：旧实现（legacy_*）与 LockOwners / LockValues 的对比
+ * owner：UUID.randomUUID().toString() 与 LockOwners.next()，8 线程同时生成；
+ * value：拼接 "时间戳|uuid" 再 split(Pattern.quote("|")) 解析，与直接编码 byte[]（文本 / 二进制两种格式）再读出时间戳
+ * <p>
+ * java -jar target/benchmarks.jar LockOwnerBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockOwnerBenchmark {
+
+    private static final String DELIMITER = "|";
+
+    private final String owner = LockOwners.next();
+    private final String uuid = UUID.randomUUID().toString();
+
+    @Benchmark
+    @Threads(8)
+    public String legacy_owner() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String owner() {
+        return LockOwners.next();
+    }
+
+    @Benchmark
+    public long legacy_value() {
+        String value = (System.currentTimeMillis() + 5000) + DELIMITER + uuid;
+        return Long.parseLong(value.split(Pattern.quote(DELIMITER))[0]);
+    }
+
+    @Benchmark
+    public long text_value() {
+        byte[] value = LockValues.encodeText(System.currentTimeMillis() + 5000, owner);
+        return LockValues.deadlineOf(value);
+    }
+
+    @Benchmark
+    public long value() {
+        byte[] value = LockValues.encode(System.currentTimeMillis() + 5000, owner);
+        return LockValues.deadlineOf(value);
+    }
+}
@@ -0,0 +1,357 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.redis.LockOwners;
+import com.lee.distributedlock.util.redis.RedisFairLock;
+import com.lee.distributedlock.util.redis.RedisLockHelper;
+import com.lee.distributedlock.util.zk.DistributedLock_zk;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多节点竞争下的压力与正确性测试
+ * <p>
+ * 每个客户端节点是一个独立的 spring 容器（独立的看门狗、释放订阅、本地合并层）和一个独立的 zk 会话，
+ * 每个节点若干线程对 hot（4 个 key）/ cold（1 万个 key）两种分布的 key 反复加锁、执行临界区、解锁。
+ * 临界区的进入和退出都登记到进程内的互斥校验器，同一 key 同时有两个持有者、或 fencing token 没有递增都记为违例。
+ * <p>
+ * 故障注入：
+ * 临界区内按概率停顿（模拟 GC 停顿，只停顿业务线程，看门狗照常续期，停顿超过租约时长时只有不续期的锁会违例）；
+ * 每隔 restart-seconds 轮流重启内嵌 redis 和 zookeeper（内嵌 redis 不持久化，重启后锁和 token 计数器都会丢失）。
+ * <p>
+ * 每种锁 × 每种分布输出吞吐量、加锁延迟 p50/p99/p999（对数直方图，样本数不限）、超时数、
+ * 加锁与解锁两个阶段各自的异常数（及按异常类型的分布）、互斥违例数、fencing 违例数：
+ * <pre>
+ * java -Dstress.nodes=4 -Dstress.threads=8 -Dstress.pause-probability=0.001 -Dstress.restart-seconds=5 \
+ *      -cp target/benchmarks.jar com.lee.distributedlock.benchmark.LockStressHarness [每轮秒数]
+ * </pre>
+ * 可选参数（-D）：stress.nodes 节点数，默认4；stress.threads 每个节点的线程数，默认8；
+ * stress.lease-millis 租约时长，默认1000；stress.wait-millis 最长等待时间，默认2000；
+ * stress.pause-probability 临界区停顿的概率，默认0；stress.pause-millis 停顿时长，默认1500；
+ * stress.restart-seconds 重启间隔，默认0不重启；stress.modes 要测试的锁，默认全部
+ */
+public class LockStressHarness {
+
+    private static final int HOT_KEYS = 4;
+    private static final int COLD_KEYS = 10_000;
+    // 每条违例最多打印的样例数
+    private static final int MAX_EXAMPLES = 10;
+
+    /**
+     * 被测试的锁
+     */
+    enum Mode {
+        // RedisLockHelper.lockFenced()，看门狗续期
+        REDIS,
+        // RedisFairLock，看门狗续期，不签发 fencing token
+        REDIS_FAIR,
+        // RedisLockHelper.lockNotSafely()，不续期，只尝试一次，用来验证校验器能发现违例
+        REDIS_NOT_SAFELY,
+        // DistributedLock_zk.tryLock()
+        ZOOKEEPER
+    }
+
+    public static void main(String[] args) throws Exception {
+        final long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        final Settings settings = new Settings();
+        try (BenchmarkEnvironment environment = BenchmarkEnvironment.start()) {
+            List<Node> nodes = new ArrayList<>(settings.nodes);
+            for (int i = 0; i < settings.nodes; i++) {
+                nodes.add(new Node(environment.newNode(), environment.zkConnectString()));
+            }
+            try {
+                for (Mode mode : settings.modes) {
+                    run(environment, nodes, settings, mode, "hot", HOT_KEYS, seconds);
+                    run(environment, nodes, settings, mode, "cold", COLD_KEYS, seconds);
+                }
+            } finally {
+                for (Node node : nodes) {
+                    node.close();
+                }
+            }
+        }
+    }
+
+    private static void run(BenchmarkEnvironment environment, List<Node> nodes, Settings settings,
+                            Mode mode, String distribution, int keys, long seconds) throws InterruptedException {
+        final MutualExclusionChecker checker = new MutualExclusionChecker();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong acquisitions = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        final ErrorTally acquireErrors = new ErrorTally();
+        final ErrorTally releaseErrors = new ErrorTally();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final CountDownLatch done = new CountDownLatch(nodes.size() * settings.threads);
+
+        for (int n = 0; n < nodes.size(); n++) {
+            final Node node = nodes.get(n);
+            for (int t = 0; t < settings.threads; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        while (System.nanoTime() < deadline) {
+                            final String key = "stress:" + distribution + ":" + random.nextInt(keys);
+                            final String owner = LockOwners.next();
+                            final long start = System.nanoTime();
+                            final long token;
+                            try {
+                                token = node.lock(mode, key, owner, settings);
+                            } catch (RuntimeException e) {
+                                acquireErrors.record(e);
+                                continue;
+                            }
+                            latency.record(System.nanoTime() - start);
+                            if (token == 0) {
+                                timeouts.incrementAndGet();
+                                continue;
+                            }
+                            checker.enter(key, owner, token);
+                            try {
+                                if (settings.pauseProbability > 0 && random.nextDouble() < settings.pauseProbability) {
+                                    TimeUnit.MILLISECONDS.sleep(settings.pauseMillis);
+                                }
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            } finally {
+                                checker.exit(key, owner);
+                                try {
+                                    node.unlock(mode, key, owner);
+                                } catch (RuntimeException e) {
+                                    releaseErrors.record(e);
+                                }
+                            }
+                            acquisitions.incrementAndGet();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }, "stress-" + mode + "-" + n + "-" + t);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        Thread chaos = startChaos(environment, settings, deadline);
+        done.await();
+        if (chaos != null) {
+            chaos.interrupt();
+            chaos.join();
+        }
+
+        System.out.printf("%-16s %-4s throughput=%.1f ops/s acquire p50=%.3f ms p99=%.3f ms p999=%.3f ms "
+                        + "timeouts=%d acquire-errors=%d release-errors=%d violations=%d fence-violations=%d%n",
+                mode, distribution, acquisitions.get() / (double) seconds,
+                latency.percentile(0.50) / 1e6, latency.percentile(0.99) / 1e6, latency.percentile(0.999) / 1e6,
+                timeouts.get(), acquireErrors.total(), releaseErrors.total(),
+                checker.violations.get(), checker.fenceViolations.get());
+        acquireErrors.print("acquire");
+        releaseErrors.print("release");
+        for (String example : checker.examples) {
+            System.out.println("    " + example);
+        }
+    }
+
+    /**
+     * 每隔 restart-seconds 轮流重启 redis 和 zookeeper
+     *
+     * @return 不重启时返回null
+     */
+    private static Thread startChaos(BenchmarkEnvironment environment, Settings settings, long deadline) {
+        if (settings.restartSeconds <= 0) {
+            return null;
+        }
+        Thread chaos = new Thread(() -> {
+            boolean redis = true;
+            try {
+                while (true) {
+                    TimeUnit.SECONDS.sleep(settings.restartSeconds);
+                    if (System.nanoTime() >= deadline) {
+                        return;
+                    }
+                    if (redis) {
+                        if (environment.restartRedis()) {
+                            System.out.println("    [chaos] redis restarted");
+                        }
+                    } else {
+                        environment.restartZookeeper();
+                        System.out.println("    [chaos] zookeeper restarted");
+                    }
+                    redis = !redis;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.out.println("    [chaos] restart failed: " + e);
+            }
+        }, "stress-chaos");
+        chaos.setDaemon(true);
+        chaos.start();
+        return chaos;
+    }
+
+    /**
+     * 一个客户端节点
+     */
+    private static final class Node {
+
+        private final AnnotationConfigApplicationContext context;
+        private final RedisLockHelper redisLockHelper;
+        private final RedisFairLock redisFairLock;
+        private final DistributedLock_zk zkLock;
+
+        private Node(AnnotationConfigApplicationContext context, String zkConnectString) {
+            this.context = context;
+            this.redisLockHelper = context.getBean(RedisLockHelper.class);
+            this.redisFairLock = context.getBean(RedisFairLock.class);
+            this.zkLock = new DistributedLock_zk(zkConnectString);
+            this.zkLock.init();
+        }
+
+        /**
+         * @return 加锁成功返回 fencing token，不签发 token 的锁返回-1，失败返回0
+         */
+        private long lock(Mode mode, String key, String owner, Settings settings) {
+            switch (mode) {
+                case REDIS:
+                    return redisLockHelper.lockFenced(key, owner, settings.leaseMillis, settings.waitMillis,
+                            TimeUnit.MILLISECONDS);
+                case REDIS_FAIR:
+                    return redisFairLock.lock(key, owner, settings.leaseMillis, settings.waitMillis,
+                            TimeUnit.MILLISECONDS) ? -1L : 0L;
+                case REDIS_NOT_SAFELY:
+                    return redisLockHelper.lockNotSafely(key, owner, settings.leaseMillis,
+                            TimeUnit.MILLISECONDS) ? -1L : 0L;
+                default:
+                    return zkLock.tryLock(key, settings.waitMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void unlock(Mode mode, String key, String owner) {
+            switch (mode) {
+                case REDIS:
+                case REDIS_NOT_SAFELY:
+                    redisLockHelper.unlock(key, owner);
+                    break;
+                case REDIS_FAIR:
+                    redisFairLock.unlock(key, owner);
+                    break;
+                default:
+                    zkLock.releaseLock(key);
+            }
+        }
+
+        private void close() {
+            zkLock.close();
+            context.close();
+        }
+    }
+
+    /**
+     * 临界区互斥校验：每个 key 记录当前的持有者数量、最近进入的持有者和见过的最大 fencing token
+     */
+    static final class MutualExclusionChecker {
+
+        private final Map<String, KeyState> keys = new ConcurrentHashMap<>();
+        private final AtomicLong violations = new AtomicLong();
+        private final AtomicLong fenceViolations = new AtomicLong();
+        private final ConcurrentLinkedQueue<String> examples = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger exampleCount = new AtomicInteger();
+
+        void enter(String key, String owner, long token) {
+            KeyState state = keys.computeIfAbsent(key, k -> new KeyState());
+            String previous = state.holder.getAndSet(owner);
+            if (state.holders.incrementAndGet() > 1) {
+                violations.incrementAndGet();
+                example("overlap key=" + key + " holder=" + previous + " entered=" + owner);
+            }
+            if (token > 0) {
+                long last = state.maxToken.getAndAccumulate(token, Math::max);
+                if (token <= last) {
+                    fenceViolations.incrementAndGet();
+                    example("fence key=" + key + " token=" + token + " after=" + last);
+                }
+            }
+        }
+
+        void exit(String key, String owner) {
+            KeyState state = keys.get(key);
+            state.holders.decrementAndGet();
+            state.holder.compareAndSet(owner, null);
+        }
+
+        private void example(String event) {
+            if (exampleCount.incrementAndGet() <= MAX_EXAMPLES) {
+                examples.add(event);
+            }
+        }
+
+        private static final class KeyState {
+            private final AtomicInteger holders = new AtomicInteger();
+            private final AtomicReference<String> holder = new AtomicReference<>();
+            private final AtomicLong maxToken = new AtomicLong();
+        }
+    }
+
+    /**
+     * 一个阶段（加锁或解锁）的异常，按异常类型计数
+     */
+    private static final class ErrorTally {
+
+        private final Map<String, LongAdder> byType = new ConcurrentHashMap<>();
+
+        void record(RuntimeException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null && cause.getCause() != cause) {
+                cause = cause.getCause();
+            }
+            byType.computeIfAbsent(cause.getClass().getName(), t -> new LongAdder()).increment();
+        }
+
+        long total() {
+            long total = 0;
+            for (LongAdder count : byType.values()) {
+                total += count.sum();
+            }
+            return total;
+        }
+
+        void print(String phase) {
+            byType.forEach((type, count) -> System.out.println("    " + phase + " error " + type + " x" + count.sum()));
+        }
+    }
+
+    private static final class Settings {
+        private final int nodes = Integer.getInteger("stress.nodes", 4);
+        private final int threads = Integer.getInteger("stress.threads", 8);
+        private final long leaseMillis = Long.getLong("stress.lease-millis", 1000L);
+        private final long waitMillis = Long.getLong("stress.wait-millis", 2000L);
+        private final double pauseProbability = Double.parseDouble(System.getProperty("stress.pause-probability", "0"));
+        private final long pauseMillis = Long.getLong("stress.pause-millis", 1500L);
+        private final long restartSeconds = Long.getLong("stress.restart-seconds", 0L);
+        private final List<Mode> modes = new ArrayList<>();
+
+        private Settings() {
+            String value = System.getProperty("stress.modes");
+            if (value == null) {
+                for (Mode mode : Mode.values()) {
+                    modes.add(mode);
+                }
+            } else {
+                for (String name : value.split(",")) {
+                    modes.add(Mode.valueOf(name.trim()));
+                }
+            }
+        }
+    }
+}
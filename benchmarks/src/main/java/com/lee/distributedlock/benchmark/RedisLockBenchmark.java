@@ -0,0 +1,162 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.redis.RedisFairLock;
+import com.lee.distributedlock.util.redis.RedisLockHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisLockHelper 的 tryLock / lockNotSafely / lock 加锁+解锁吞吐量
+ * uncontended：每个线程使用自己的 key；hotKey：所有线程争抢同一个 key（失败也计一次操作）；
+ * manyKeys：在 10 万个 key 中随机选取；
+ * *_latency：热点 key 上阻塞等待的加锁延迟分布（p50/p99/p99.9），对比普通锁与公平锁的长尾
+ * <p>
+ * java -jar target/benchmarks.jar RedisLockBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisLockBenchmark {
+
+    private static final int MANY_KEYS = 100_000;
+    private static final long LEASE_SECONDS = 5;
+
+    @State(Scope.Benchmark)
+    public static class Env {
+        BenchmarkEnvironment environment;
+        RedisLockHelper helper;
+        RedisFairLock fairLock;
+        String[] keys;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            environment = BenchmarkEnvironment.start();
+            helper = environment.bean(RedisLockHelper.class);
+            fairLock = environment.bean(RedisFairLock.class);
+            keys = new String[MANY_KEYS];
+            for (int i = 0; i < MANY_KEYS; i++) {
+                keys[i] = "bench:many:" + i;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            environment.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        String ownKey;
+        String owner;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ownKey = "bench:own:" + Thread.currentThread().getId();
+            owner = UUID.randomUUID().toString();
+        }
+    }
+
+    @Benchmark
+    public boolean tryLock_uncontended(Env env, Client client) {
+        boolean locked = env.helper.tryLock(client.ownKey, client.owner, LEASE_SECONDS, TimeUnit.SECONDS);
+        env.helper.unlock(client.ownKey, client.owner);
+        return locked;
+    }
+
+    @Benchmark
+    public boolean lockNotSafely_uncontended(Env env, Client client) {
+        boolean locked = env.helper.lockNotSafely(client.ownKey, client.owner, LEASE_SECONDS, TimeUnit.SECONDS);
+        env.helper.unlock(client.ownKey, client.owner);
+        return locked;
+    }
+
+    @Benchmark
+    public boolean lock_uncontended(Env env, Client client) {
+        boolean locked = env.helper.lock(client.ownKey, client.owner, LEASE_SECONDS);
+        env.helper.unlock(client.ownKey, client.owner);
+        return locked;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean tryLock_hotKey(Env env, Client client) {
+        boolean locked = env.helper.tryLock("bench:hot", client.owner, LEASE_SECONDS, TimeUnit.SECONDS);
+        if (locked) {
+            env.helper.unlock("bench:hot", client.owner);
+        }
+        return locked;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean lock_hotKey(Env env, Client client) {
+        boolean locked = env.helper.lock("bench:hot", client.owner, LEASE_SECONDS);
+        if (locked) {
+            env.helper.unlock("bench:hot", client.owner);
+        }
+        return locked;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean lock_hotKey_blocking(Env env, Client client) {
+        boolean locked = env.helper.lock("bench:hot:blocking", client.owner, LEASE_SECONDS, LEASE_SECONDS);
+        if (locked) {
+            env.helper.unlock("bench:hot:blocking", client.owner);
+        }
+        return locked;
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean lock_hotKey_latency(Env env, Client client) {
+        boolean locked = env.helper.lock("bench:hot:latency", client.owner, LEASE_SECONDS, LEASE_SECONDS);
+        if (locked) {
+            env.helper.unlock("bench:hot:latency", client.owner);
+        }
+        return locked;
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean fairLock_hotKey_latency(Env env, Client client) {
+        boolean locked = env.fairLock.lock("bench:hot:fair", client.owner, LEASE_SECONDS, LEASE_SECONDS, TimeUnit.SECONDS);
+        if (locked) {
+            env.fairLock.unlock("bench:hot:fair", client.owner);
+        }
+        return locked;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean lock_manyKeys(Env env, Client client) {
+        String key = env.keys[ThreadLocalRandom.current().nextInt(MANY_KEYS)];
+        boolean locked = env.helper.lock(key, client.owner, LEASE_SECONDS);
+        if (locked) {
+            env.helper.unlock(key, client.owner);
+        }
+        return locked;
+    }
+}
@@ -0,0 +1,125 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.redis.ShardedRedisLock;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import redis.embedded.RedisServer;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShardedRedisLock 的加锁+解锁吞吐量随分片数的变化，key 在 10 万个中随机选取
+ * 每个分片启动一个内嵌 redis；指定 -Dbenchmark.shards.ports=6379,6380,6381,6382 时改用本机已启动的实例
+ * （取前 shards 个），在多核机器上应接近线性增长
+ * <p>
+ * java -jar target/benchmarks.jar ShardedLockBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+public class ShardedLockBenchmark {
+
+    private static final int KEYS = 100_000;
+    private static final long LEASE_SECONDS = 5;
+
+    @State(Scope.Benchmark)
+    public static class Env {
+
+        @Param({"1", "2", "4"})
+        int shards;
+
+        final List<RedisServer> servers = new ArrayList<>();
+        final List<LettuceConnectionFactory> factories = new ArrayList<>();
+        LeaseWatchdog watchdog;
+        ShardedRedisLock lock;
+        String[] keys;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            String[] ports = System.getProperty("benchmark.shards.ports", "").split(",");
+            Map<String, LettuceConnectionFactory> nodes = new LinkedHashMap<>();
+            for (int i = 0; i < shards; i++) {
+                int port;
+                if (i < ports.length && !ports[i].trim().isEmpty()) {
+                    port = Integer.parseInt(ports[i].trim());
+                } else {
+                    try (ServerSocket socket = new ServerSocket(0)) {
+                        port = socket.getLocalPort();
+                    }
+                    RedisServer server = new RedisServer(port);
+                    server.start();
+                    servers.add(server);
+                }
+                LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                        new RedisStandaloneConfiguration("127.0.0.1", port));
+                factory.afterPropertiesSet();
+                factories.add(factory);
+                nodes.put("127.0.0.1:" + port, factory);
+            }
+            watchdog = new LeaseWatchdog(100, 2, 65536, 256, LockMetrics.disabled());
+            lock = new ShardedRedisLock(nodes, 160, watchdog, LockMetrics.disabled());
+            keys = new String[KEYS];
+            for (int i = 0; i < KEYS; i++) {
+                keys[i] = "bench:sharded:" + i;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            lock.destroy();
+            watchdog.destroy();
+            for (LettuceConnectionFactory factory : factories) {
+                factory.destroy();
+            }
+            for (RedisServer server : servers) {
+                server.stop();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        String owner;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            owner = UUID.randomUUID().toString();
+        }
+    }
+
+    @Benchmark
+    public boolean lock_manyKeys(Env env, Client client) {
+        String key = env.keys[ThreadLocalRandom.current().nextInt(KEYS)];
+        boolean locked = env.lock.lock(key, client.owner, LEASE_SECONDS, 0, TimeUnit.SECONDS);
+        if (locked) {
+            env.lock.unlock(key, client.owner);
+        }
+        return locked;
+    }
+}
@@ -0,0 +1,88 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.zk.DistributedLock_zk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DistributedLock_zk 在 TestingServer 上的加锁+解锁吞吐量，场景与 RedisLockBenchmark 相同
+ * zk 锁是阻塞的，hotKey 场景下每次操作都会排队直到拿到锁
+ * <p>
+ * java -jar target/benchmarks.jar ZkLockBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZkLockBenchmark {
+
+    private static final int MANY_KEYS = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class Env {
+        BenchmarkEnvironment environment;
+        DistributedLock_zk lock;
+        String[] keys;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            environment = BenchmarkEnvironment.start();
+            lock = environment.zkLock();
+            keys = new String[MANY_KEYS];
+            for (int i = 0; i < MANY_KEYS; i++) {
+                keys[i] = "many-" + i;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            environment.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        String ownKey;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ownKey = "own-" + Thread.currentThread().getId();
+        }
+    }
+
+    @Benchmark
+    public boolean zk_uncontended(Env env, Client client) {
+        env.lock.getLock(client.ownKey);
+        return env.lock.releaseLock(client.ownKey);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean zk_hotKey(Env env) {
+        env.lock.getLock("hot");
+        return env.lock.releaseLock("hot");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean zk_manyKeys(Env env) {
+        String key = env.keys[ThreadLocalRandom.current().nextInt(MANY_KEYS)];
+        env.lock.getLock(key);
+        return env.lock.releaseLock(key);
+    }
+}
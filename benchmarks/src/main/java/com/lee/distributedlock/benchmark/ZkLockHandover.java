@@ -0,0 +1,105 @@
+package com.lee.distributedlock.benchmark;
+
+import com.lee.distributedlock.util.zk.DistributedLock_zk;
+import org.apache.curator.test.TestingServer;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DistributedLock_zk 在进程内 TestingServer 上的交接测试
+ * 2 / 16 / 128 个竞争者反复 getLock()/releaseLock()，报告吞吐量、交接延迟（上一个持有者释放到下一个持有者获得）的 p50/p99，
+ * 同时校验临界区内同一时刻只有一个持有者
+ * <p>
+ * java -cp target/benchmarks.jar com.lee.distributedlock.benchmark.ZkLockHandover [每轮秒数]
+ */
+public class ZkLockHandover {
+
+    private static final int[] CONTENDERS = {2, 16, 128};
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        try (TestingServer server = new TestingServer(true)) {
+            for (int contenders : CONTENDERS) {
+                run(server.getConnectString(), contenders, seconds);
+            }
+        }
+    }
+
+    private static void run(String connectString, int contenders, long seconds) throws InterruptedException {
+        DistributedLock_zk lock = new DistributedLock_zk(connectString);
+        lock.init();
+        final AtomicInteger holders = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        final AtomicLong lastRelease = new AtomicLong();
+        final LatencyRecorder handover = new LatencyRecorder(1 << 20);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final CountDownLatch done = new CountDownLatch(contenders);
+        final AtomicLong acquisitions = new AtomicLong();
+
+        for (int i = 0; i < contenders; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        lock.getLock();
+                        long acquiredAt = System.nanoTime();
+                        long releasedAt = lastRelease.get();
+                        if (releasedAt != 0) {
+                            handover.record(acquiredAt - releasedAt);
+                        }
+                        if (holders.incrementAndGet() != 1) {
+                            violations.incrementAndGet();
+                        }
+                        acquisitions.incrementAndGet();
+                        holders.decrementAndGet();
+                        lastRelease.set(System.nanoTime());
+                        lock.releaseLock();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "zk-contender-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        lock.close();
+
+        System.out.printf("contenders=%d throughput=%.1f ops/s handover p50=%.3f ms p99=%.3f ms violations=%d%n",
+                contenders, acquisitions.get() / (double) seconds,
+                handover.percentile(0.50) / 1e6, handover.percentile(0.99) / 1e6, violations.get());
+    }
+
+    /**
+     * 定长的延迟采样，超过容量后丢弃后续样本
+     */
+    static final class LatencyRecorder {
+
+        private final long[] samples;
+        private final AtomicInteger size = new AtomicInteger();
+
+        LatencyRecorder(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        void record(long nanos) {
+            int index = size.getAndIncrement();
+            if (index < samples.length) {
+                samples[index] = nanos;
+            }
+        }
+
+        long percentile(double p) {
+            int n = Math.min(size.get(), samples.length);
+            if (n == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, n);
+            Arrays.sort(sorted);
+            return sorted[Math.min(n - 1, (int) Math.ceil(p * n) - 1)];
+        }
+    }
+}
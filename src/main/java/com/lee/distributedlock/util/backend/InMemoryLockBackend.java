@@ -0,0 +1,176 @@
+package com.lee.distributedlock.util.backend;
+
+import com.lee.distributedlock.util.redis.annotation.LockBackendType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内的锁引擎，用于单实例部署和集成测试，加锁不经过网络
+ * <p>
+ * key 按哈希分到固定数量的分段（stripe），每个分段一把 ReentrantLock + 一个 HashMap 保存租约，
+ * 不同分段的 key 互不竞争；等待者在分段的 Condition 上等待解锁通知或持有者的租约到期，
+ * 到期的租约在下一次访问时被覆盖，分段每加锁 1024 次顺带清理一次到期的租约。
+ * 租约到期完全由本地的截止时间判断，不向看门狗登记、不自动续期（续期只是改一个字段，不值得占用时间轮），
+ * 持有时间可能超过租约时由调用方通过 renew() 续期，或者直接给足租约时长
+ * <p>
+ * distributed-lock.memory.stripes 分段数，向上取整为2的幂，默认64
+ */
+@Component
+public class InMemoryLockBackend implements LockBackend {
+
+    private static final int PURGE_MASK = 1024 - 1;
+
+    private final Stripe[] stripes;
+    private final int mask;
+    // 所有 key 共用的 fencing token 计数器
+    private final AtomicLong fence = new AtomicLong();
+
+    public InMemoryLockBackend(@Value("${distributed-lock.memory.stripes:64}") int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = size - 1;
+    }
+
+    @Override
+    public LockBackendType type() {
+        return LockBackendType.MEMORY;
+    }
+
+    @Override
+    public long tryAcquire(String key, String owner, long leaseTime, long waitTime, TimeUnit unit) {
+        final long leaseNanos = unit.toNanos(leaseTime);
+        final long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        final Stripe stripe = this.stripeOf(key);
+        stripe.lock.lock();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                Lease lease = stripe.leases.get(key);
+                if (lease == null || lease.isExpired(now)) {
+                    stripe.leases.put(key, new Lease(owner, now + leaseNanos));
+                    if ((++stripe.acquires & PURGE_MASK) == 0) {
+                        stripe.purge(now);
+                    }
+                    return fence.incrementAndGet();
+                }
+                long remaining = deadline - now;
+                if (waitTime <= 0 || remaining <= 0) {
+                    return 0L;
+                }
+                stripe.waiters++;
+                try {
+                    // 持有者忘记解锁时，最多等到它的租约到期
+                    stripe.released.awaitNanos(Math.min(remaining, lease.expiresAt - now));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return 0L;
+                } finally {
+                    stripe.waiters--;
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean renew(String key, String owner, long leaseTime, TimeUnit unit) {
+        final Stripe stripe = this.stripeOf(key);
+        stripe.lock.lock();
+        try {
+            long now = System.nanoTime();
+            Lease lease = stripe.leases.get(key);
+            if (lease == null || !lease.owner.equals(owner) || lease.isExpired(now)) {
+                return false;
+            }
+            lease.expiresAt = now + unit.toNanos(leaseTime);
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean release(String key, String owner) {
+        final Stripe stripe = this.stripeOf(key);
+        stripe.lock.lock();
+        try {
+            Lease lease = stripe.leases.get(key);
+            if (lease == null || !lease.owner.equals(owner)) {
+                return false;
+            }
+            stripe.leases.remove(key);
+            if (stripe.waiters > 0) {
+                // 同一分段的等待者可能在等不同的 key，全部唤醒后各自重新检查
+                stripe.released.signalAll();
+            }
+            return !lease.isExpired(System.nanoTime());
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * @return 当前保存的租约数（含已到期未清理的）
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.leases.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripeOf(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition released = lock.newCondition();
+        // 以下字段只在持有 lock 时访问
+        private final Map<String, Lease> leases = new HashMap<>();
+        private int waiters;
+        private int acquires;
+
+        private void purge(long now) {
+            Iterator<Lease> it = leases.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().isExpired(now)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static final class Lease {
+        private final String owner;
+        private long expiresAt;
+
+        private Lease(String owner, long expiresAt) {
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
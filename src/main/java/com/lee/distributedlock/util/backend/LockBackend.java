@@ -0,0 +1,76 @@
+package com.lee.distributedlock.util.backend;
+
+import com.lee.distributedlock.util.redis.annotation.LockBackendType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁引擎 SPI
+ * 以 (key, owner) 标识一把带租约的互斥锁，加锁成功返回大于0的 fencing token；
+ * 租约的自动续期由各引擎自己负责（redis 引擎登记到 LeaseWatchdog，zookeeper 的临时节点随会话存活），
+ * 内存引擎不自动续期，租约按给定时长在本地到期；renew() 供调用方手动续期
+ * <p>
+ * LockMethodInterceptor 按 @CacheLock(backend = ...) 从 LockBackends 中选择引擎
+ */
+public interface LockBackend {
+
+    /**
+     * @return 引擎类型，LockBackends 按该值登记
+     */
+    LockBackendType type();
+
+    /**
+     * 阻塞加锁，直到成功，默认按租约时长分段调用 tryAcquire()
+     *
+     * @param key       锁key
+     * @param owner     锁的持有者
+     * @param leaseTime 租约时长
+     * @param unit      时间单位
+     * @return fencing token
+     * @throws IllegalStateException 等待期间被中断
+     */
+    default long acquire(String key, String owner, long leaseTime, TimeUnit unit) {
+        final long waitTime = Math.max(1L, leaseTime);
+        while (true) {
+            long token = this.tryAcquire(key, owner, leaseTime, waitTime, unit);
+            if (token > 0) {
+                return token;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IllegalStateException("获取分布式锁被中断: " + key);
+            }
+        }
+    }
+
+    /**
+     * 加锁，最多等待 waitTime
+     *
+     * @param key       锁key
+     * @param owner     锁的持有者
+     * @param leaseTime 租约时长
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @return 加锁成功返回 fencing token（大于0），超时或被中断返回0
+     */
+    long tryAcquire(String key, String owner, long leaseTime, long waitTime, TimeUnit unit);
+
+    /**
+     * 续期
+     *
+     * @param key       锁key
+     * @param owner     锁的持有者
+     * @param leaseTime 续期后的租约时长
+     * @param unit      时间单位
+     * @return 锁仍由 owner 持有并续期成功返回true
+     */
+    boolean renew(String key, String owner, long leaseTime, TimeUnit unit);
+
+    /**
+     * 解锁
+     *
+     * @param key   锁key
+     * @param owner 锁的持有者
+     * @return 锁仍由 owner 持有并释放成功返回true
+     */
+    boolean release(String key, String owner);
+}
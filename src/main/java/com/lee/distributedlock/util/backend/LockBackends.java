@@ -0,0 +1,34 @@
+package com.lee.distributedlock.util.backend;
+
+import com.lee.distributedlock.util.redis.annotation.LockBackendType;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 容器中所有 LockBackend 的登记表，按 LockBackendType 查找
+ */
+@Component
+public class LockBackends {
+
+    private final Map<LockBackendType, LockBackend> backends = new EnumMap<>(LockBackendType.class);
+
+    public LockBackends(ObjectProvider<LockBackend> backends) {
+        backends.orderedStream().forEach(backend -> this.backends.putIfAbsent(backend.type(), backend));
+    }
+
+    /**
+     * @param type 引擎类型
+     * @return 该类型的锁引擎
+     * @throws IllegalStateException 容器中没有该类型的引擎
+     */
+    public LockBackend get(LockBackendType type) {
+        LockBackend backend = backends.get(type);
+        if (backend == null) {
+            throw new IllegalStateException("未配置锁引擎: " + type);
+        }
+        return backend;
+    }
+}
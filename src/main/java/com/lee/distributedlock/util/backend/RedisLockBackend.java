@@ -0,0 +1,40 @@
+package com.lee.distributedlock.util.backend;
+
+import com.lee.distributedlock.util.redis.RedisLockHelper;
+import com.lee.distributedlock.util.redis.annotation.LockBackendType;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis 锁引擎，即 RedisLockHelper 的互斥锁：释放通知代替轮询、看门狗续期、签发 fencing token
+ */
+@Component
+public class RedisLockBackend implements LockBackend {
+
+    private final RedisLockHelper redisLockHelper;
+
+    public RedisLockBackend(RedisLockHelper redisLockHelper) {
+        this.redisLockHelper = redisLockHelper;
+    }
+
+    @Override
+    public LockBackendType type() {
+        return LockBackendType.REDIS;
+    }
+
+    @Override
+    public long tryAcquire(String key, String owner, long leaseTime, long waitTime, TimeUnit unit) {
+        return redisLockHelper.lockFenced(key, owner, leaseTime, waitTime, unit);
+    }
+
+    @Override
+    public boolean renew(String key, String owner, long leaseTime, TimeUnit unit) {
+        return redisLockHelper.renew(key, owner, leaseTime, unit);
+    }
+
+    @Override
+    public boolean release(String key, String owner) {
+        return redisLockHelper.release(key, owner);
+    }
+}
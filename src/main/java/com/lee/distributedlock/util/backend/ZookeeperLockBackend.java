@@ -0,0 +1,73 @@
+package com.lee.distributedlock.util.backend;
+
+import com.lee.distributedlock.util.redis.annotation.LockBackendType;
+import com.lee.distributedlock.util.zk.DistributedLock_zk;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * zookeeper 锁引擎
+ * 锁节点是临时顺序节点，由 zk 会话保活，没有租约时长，leaseTime 不起作用，renew() 只检查锁是否仍被持有；
+ * DistributedLock_zk 按线程记录持有的锁节点，加锁与解锁必须在同一个线程中；
+ * 另外按 key + owner 记录本引擎加锁成功的调用，release() 只释放记录过的持有，
+ * 避免同一线程里一次超时失败的嵌套调用用自己的 owner 删掉外层调用的锁节点
+ */
+@Component
+public class ZookeeperLockBackend implements LockBackend {
+
+    private final DistributedLock_zk zkLock;
+
+    // 加锁成功、尚未释放的 key + owner -> 持有次数（同一 owner 可重入）
+    private final ConcurrentMap<String, Integer> acquired = new ConcurrentHashMap<>();
+
+    public ZookeeperLockBackend(DistributedLock_zk zkLock) {
+        this.zkLock = zkLock;
+    }
+
+    @Override
+    public LockBackendType type() {
+        return LockBackendType.ZOOKEEPER;
+    }
+
+    @Override
+    public long acquire(String key, String owner, long leaseTime, TimeUnit unit) {
+        return record(key, owner, zkLock.getLock(key));
+    }
+
+    @Override
+    public long tryAcquire(String key, String owner, long leaseTime, long waitTime, TimeUnit unit) {
+        return record(key, owner, zkLock.tryLock(key, waitTime, unit));
+    }
+
+    @Override
+    public boolean renew(String key, String owner, long leaseTime, TimeUnit unit) {
+        return zkLock.isHeldByCurrentThread(key);
+    }
+
+    @Override
+    public boolean release(String key, String owner) {
+        final boolean[] held = new boolean[1];
+        acquired.computeIfPresent(holdId(key, owner), (id, count) -> {
+            held[0] = true;
+            return count > 1 ? count - 1 : null;
+        });
+        if (!held[0]) {
+            return false;
+        }
+        return zkLock.releaseLock(key);
+    }
+
+    private long record(String key, String owner, long token) {
+        if (token > 0) {
+            acquired.merge(holdId(key, owner), 1, Integer::sum);
+        }
+        return token;
+    }
+
+    private static String holdId(String key, String owner) {
+        return key + '|' + owner;
+    }
+}
@@ -0,0 +1,32 @@
+package com.lee.distributedlock.util.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 热点锁 key 的 actuator 端点：GET /actuator/hotlocks 查看名单，DELETE 清空
+ * 需开放端点：management.endpoints.web.exposure.include=hotlocks
+ */
+@Component
+@Endpoint(id = "hotlocks")
+public class HotKeyEndpoint {
+
+    @Autowired
+    private HotKeyProfiler hotKeyProfiler;
+
+    @ReadOperation
+    public List<Map<String, Object>> hotKeys() {
+        return hotKeyProfiler.topKeys();
+    }
+
+    @DeleteOperation
+    public void reset() {
+        hotKeyProfiler.reset();
+    }
+}
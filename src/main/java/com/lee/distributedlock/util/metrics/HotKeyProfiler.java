@@ -0,0 +1,288 @@
+package com.lee.distributedlock.util.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热点锁 key 分析器，常开，内存固定
+ * Count-Min Sketch 估计每个完整 key（prefix + @CacheParam 的值）的竞争分数：每次加锁失败（重复提交）记1分，
+ * 加锁每等待1毫秒记1分；分数最高的 top-N 个 key 单独记录加锁次数、失败次数、加锁等待时间、持有时间。
+ * 只按加锁次数排名时，调用频繁但从不冲突的 key 会挤掉真正在争抢的 key，因此无竞争的加锁不计分
+ * <p>
+ * 无竞争的加锁只做一次 ConcurrentHashMap.get()；有竞争时做 depth 次原子累加，只有 key 的分数超过当前 top-N 的门槛时才加锁调整名单；
+ * 每隔 decay-seconds 所有计数减半，让名单反映最近的热点而不是历史累计
+ * <p>
+ * distributed-lock.hot-keys.enabled     是否开启，默认true
+ * distributed-lock.hot-keys.top         名单大小，默认20
+ * distributed-lock.hot-keys.width       sketch 每行的计数器个数，默认4096
+ * distributed-lock.hot-keys.decay-seconds 计数减半的周期，默认60
+ */
+@Component
+public class HotKeyProfiler {
+
+    private static final int DEPTH = 4;
+    private static final String ESTIMATE = "contentionScore";
+    // 加锁等待时间每满这么久记1分
+    private static final long WAIT_UNIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final boolean enabled;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sketch;
+    private final long decayNanos;
+    private final AtomicLong nextDecayAt;
+    private final AtomicBoolean decaying = new AtomicBoolean();
+
+    // top-N：key -> 统计，只在 admit() 中增删
+    private final ConcurrentMap<String, KeyStats> top = new ConcurrentHashMap<>();
+    // 进入名单的门槛：名单中最小的分数，可能偏低（只会多走几次 admit()，不会漏掉热点）
+    private volatile long threshold;
+
+    public HotKeyProfiler(@Value("${distributed-lock.hot-keys.enabled:true}") boolean enabled,
+                          @Value("${distributed-lock.hot-keys.top:20}") int capacity,
+                          @Value("${distributed-lock.hot-keys.width:4096}") int width,
+                          @Value("${distributed-lock.hot-keys.decay-seconds:60}") long decaySeconds) {
+        this.enabled = enabled;
+        this.capacity = Math.max(1, capacity);
+        // 宽度取2的幂，用位运算代替取模
+        int w = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+        this.mask = w - 1;
+        this.sketch = new AtomicLongArray(enabled ? DEPTH * w : 0);
+        this.decayNanos = TimeUnit.SECONDS.toNanos(Math.max(1, decaySeconds));
+        this.nextDecayAt = new AtomicLong(System.nanoTime() + decayNanos);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return 计时起点，未开启时返回0
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * 记录一次加锁
+     *
+     * @param lockKey  完整的锁key
+     * @param start    start() 的返回值
+     * @param acquired 是否加锁成功
+     */
+    public void acquired(String lockKey, long start, boolean acquired) {
+        if (!enabled) {
+            return;
+        }
+        final long now = System.nanoTime();
+        final long waitNanos = now - start;
+        this.decayIfDue(now);
+        KeyStats stats = top.get(lockKey);
+        final long score = (acquired ? 0 : 1) + waitNanos / WAIT_UNIT_NANOS;
+        if (score > 0) {
+            long estimate = this.increment(lockKey.hashCode(), score);
+            if (stats == null && (top.size() < capacity || estimate > threshold)) {
+                stats = this.admit(lockKey, estimate);
+            }
+        }
+        if (stats != null) {
+            stats.acquired(waitNanos, acquired);
+        }
+    }
+
+    /**
+     * 记录一次持有，只统计名单中的 key
+     *
+     * @param lockKey 完整的锁key
+     * @param start   获得锁时 start() 的返回值
+     */
+    public void held(String lockKey, long start) {
+        if (!enabled) {
+            return;
+        }
+        KeyStats stats = top.get(lockKey);
+        if (stats != null) {
+            stats.held(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return 当前名单，按估计的竞争分数从高到低
+     */
+    public List<Map<String, Object>> topKeys() {
+        List<Map<String, Object>> result = new ArrayList<>(top.size());
+        for (Map.Entry<String, KeyStats> entry : top.entrySet()) {
+            result.add(entry.getValue().snapshot(entry.getKey(), this.estimate(entry.getKey().hashCode())));
+        }
+        result.sort(Comparator.comparingLong((Map<String, Object> m) -> (Long) m.get(ESTIMATE)).reversed());
+        return result;
+    }
+
+    /**
+     * 清空所有计数和名单
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.set(i, 0);
+        }
+        top.clear();
+        threshold = 0;
+    }
+
+    private long increment(int hash, long score) {
+        int h2 = spread(hash);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * (mask + 1) + ((hash + row * h2) & mask);
+            min = Math.min(min, sketch.addAndGet(index, score));
+        }
+        return min;
+    }
+
+    private long estimate(int hash) {
+        int h2 = spread(hash);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, sketch.get(row * (mask + 1) + ((hash + row * h2) & mask)));
+        }
+        return min;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) | 1;
+    }
+
+    /**
+     * 名单未满直接加入；已满时替换掉分数最小的 key
+     */
+    private synchronized KeyStats admit(String lockKey, long estimate) {
+        KeyStats stats = top.get(lockKey);
+        if (stats != null) {
+            return stats;
+        }
+        if (top.size() >= capacity) {
+            String victim = null;
+            long victimEstimate = Long.MAX_VALUE;
+            for (String key : top.keySet()) {
+                long e = this.estimate(key.hashCode());
+                if (e < victimEstimate) {
+                    victim = key;
+                    victimEstimate = e;
+                }
+            }
+            if (victim == null || victimEstimate >= estimate) {
+                threshold = victimEstimate;
+                return null;
+            }
+            top.remove(victim);
+        }
+        stats = new KeyStats();
+        top.put(lockKey, stats);
+        long min = Long.MAX_VALUE;
+        for (String key : top.keySet()) {
+            min = Math.min(min, this.estimate(key.hashCode()));
+        }
+        threshold = top.size() < capacity ? 0 : min;
+        return stats;
+    }
+
+    private void decayIfDue(long now) {
+        long due = nextDecayAt.get();
+        if (now - due < 0 || !decaying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (nextDecayAt.compareAndSet(due, now + decayNanos)) {
+                for (int i = 0; i < sketch.length(); i++) {
+                    if (sketch.get(i) != 0) {
+                        sketch.getAndUpdate(i, v -> v >> 1);
+                    }
+                }
+                threshold >>= 1;
+                for (KeyStats stats : top.values()) {
+                    stats.decay();
+                }
+            }
+        } finally {
+            decaying.set(false);
+        }
+    }
+
+    /**
+     * 名单中单个 key 的统计
+     */
+    private static final class KeyStats {
+        private final LongAdder acquires = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final LongAdder holds = new LongAdder();
+        private final LongAdder holdNanos = new LongAdder();
+        private final AtomicLong maxHoldNanos = new AtomicLong();
+
+        private void acquired(long waitNanos, boolean acquired) {
+            acquires.increment();
+            if (!acquired) {
+                failures.increment();
+            }
+            this.waitNanos.add(waitNanos);
+            if (waitNanos > maxWaitNanos.get()) {
+                maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            }
+        }
+
+        private void held(long holdNanos) {
+            holds.increment();
+            this.holdNanos.add(holdNanos);
+            if (holdNanos > maxHoldNanos.get()) {
+                maxHoldNanos.accumulateAndGet(holdNanos, Math::max);
+            }
+        }
+
+        /**
+         * 与 sketch 同步减半，保持各项比例不变
+         */
+        private void decay() {
+            halve(acquires);
+            halve(failures);
+            halve(waitNanos);
+            halve(holds);
+            halve(holdNanos);
+            maxWaitNanos.set(0);
+            maxHoldNanos.set(0);
+        }
+
+        private static void halve(LongAdder adder) {
+            adder.add(-(adder.sum() >> 1));
+        }
+
+        private Map<String, Object> snapshot(String key, long estimate) {
+            long acquireCount = acquires.sum();
+            long holdCount = holds.sum();
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("key", key);
+            snapshot.put(ESTIMATE, estimate);
+            snapshot.put("acquires", acquireCount);
+            snapshot.put("failures", failures.sum());
+            snapshot.put("meanWaitMicros", acquireCount == 0 ? 0 : waitNanos.sum() / acquireCount / 1000);
+            snapshot.put("maxWaitMicros", maxWaitNanos.get() / 1000);
+            snapshot.put("meanHoldMicros", holdCount == 0 ? 0 : holdNanos.sum() / holdCount / 1000);
+            snapshot.put("maxHoldMicros", maxHoldNanos.get() / 1000);
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.lee.distributedlock.util.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁的 micrometer 指标，通过 actuator 的 /actuator/metrics 暴露：
+ * distributed.lock.acquire   加锁耗时（backend, operation, prefix, result=acquired/failed）
+ * distributed.lock.release   解锁耗时（backend, operation, prefix）
+ * distributed.lock.held      锁的实际持有时长（prefix）
+ * distributed.lock.rejected  @CacheLock 因“重复提交”拒绝的次数（prefix）
+ * distributed.lock.renewal   看门狗续期次数（prefix, result=renewed/lost/error）
+ * <p>
+ * 只按 key 的前缀打标签，不按完整 key：LockMethodInterceptor 在加锁、解锁期间用 bindPrefix() 绑定 @CacheLock.prefix()，
+ * 前缀中含有 ":" 也能原样作为标签，看门狗登记租约时记下绑定的前缀，续期指标沿用；
+ * 没有绑定时（直接调用锁 API、响应式方法、SINGLE_FLIGHT）取 key 中第一个 ":" 之前的部分。
+ * 前缀种类超过上限后归入 "other"，避免标签基数爆炸；
+ * 未启用（distributed-lock.metrics.enabled=false 或没有 MeterRegistry）时每个方法第一行就返回，不产生任何分配
+ */
+@Component
+public class LockMetrics {
+
+    private static final LockMetrics DISABLED = new LockMetrics((MeterRegistry) null, false);
+
+    private static final int MAX_PREFIXES = 256;
+    private static final String OTHER = "other";
+    private static final char PREFIX_DELIMITER = ':';
+
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final ConcurrentMap<String, PrefixMeters> meters = new ConcurrentHashMap<>();
+    // LockMethodInterceptor 在当前线程加锁、解锁期间绑定的 @CacheLock.prefix()
+    private final ThreadLocal<String> boundPrefix = new ThreadLocal<>();
+
+    @Autowired
+    public LockMetrics(ObjectProvider<MeterRegistry> registry,
+                       @Value("${distributed-lock.metrics.enabled:true}") boolean enabled) {
+        this(registry.getIfAvailable(), enabled);
+    }
+
+    private LockMetrics(MeterRegistry registry, boolean enabled) {
+        this.registry = registry;
+        this.enabled = enabled && registry != null;
+    }
+
+    /**
+     * 不记录任何指标的实例，供未注入时使用
+     */
+    public static LockMetrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在当前线程绑定指标前缀，之后的加锁、解锁、登记租约都以它作为标签，未启用时不做任何事
+     *
+     * @param prefix @CacheLock.prefix()
+     * @return 绑定前的前缀，交给 restorePrefix()
+     */
+    public String bindPrefix(String prefix) {
+        if (!enabled) {
+            return null;
+        }
+        String previous = boundPrefix.get();
+        boundPrefix.set(prefix);
+        return previous;
+    }
+
+    public void restorePrefix(String previous) {
+        if (!enabled) {
+            return;
+        }
+        if (previous == null) {
+            boundPrefix.remove();
+        } else {
+            boundPrefix.set(previous);
+        }
+    }
+
+    /**
+     * @param lockKey 锁key
+     * @return 该 key 的指标前缀：当前线程绑定的前缀，没有绑定时取第一个 ":" 之前的部分；未启用时返回null
+     */
+    public String prefixOf(String lockKey) {
+        if (!enabled) {
+            return null;
+        }
+        String prefix = boundPrefix.get();
+        if (prefix != null) {
+            return prefix;
+        }
+        int index = lockKey.indexOf(PREFIX_DELIMITER);
+        return index > 0 ? lockKey.substring(0, index) : OTHER;
+    }
+
+    /**
+     * @return 计时起点，未启用时返回0
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * 记录一次加锁
+     *
+     * @param operation 加锁操作
+     * @param lockKey   锁key，只取前缀作为标签
+     * @param start     start() 的返回值
+     * @param acquired  是否加锁成功
+     */
+    public void acquire(LockOperation operation, String lockKey, long start, boolean acquired) {
+        if (!enabled) {
+            return;
+        }
+        PrefixMeters prefixMeters = metersOf(prefixOf(lockKey));
+        Timer timer = acquired ? prefixMeters.acquired(operation) : prefixMeters.failed(operation);
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次解锁
+     */
+    public void release(LockOperation operation, String lockKey, long start) {
+        if (!enabled) {
+            return;
+        }
+        metersOf(prefixOf(lockKey)).released(operation).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录锁的持有时长
+     *
+     * @param prefix @CacheLock.prefix()
+     * @param start  加锁成功时 start() 的返回值
+     */
+    public void held(String prefix, long start) {
+        if (!enabled) {
+            return;
+        }
+        metersOf(prefix).held.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次“重复提交”拒绝
+     *
+     * @param prefix @CacheLock.prefix()
+     */
+    public void rejected(String prefix) {
+        if (!enabled) {
+            return;
+        }
+        metersOf(prefix).rejected.increment();
+    }
+
+    /**
+     * 记录一次续期结果
+     *
+     * @param prefix  登记租约时 prefixOf() 的返回值
+     * @param renewed 续期成功为true，锁已丢失为false
+     */
+    public void renewal(String prefix, boolean renewed) {
+        if (!enabled) {
+            return;
+        }
+        PrefixMeters prefixMeters = metersOf(prefix);
+        (renewed ? prefixMeters.renewed : prefixMeters.lost).increment();
+    }
+
+    /**
+     * 记录一次续期异常
+     *
+     * @param prefix 登记租约时 prefixOf() 的返回值
+     */
+    public void renewalError(String prefix) {
+        if (!enabled) {
+            return;
+        }
+        metersOf(prefix).renewalError.increment();
+    }
+
+    private PrefixMeters metersOf(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            prefix = OTHER;
+        }
+        PrefixMeters prefixMeters = meters.get(prefix);
+        if (prefixMeters != null) {
+            return prefixMeters;
+        }
+        if (meters.size() >= MAX_PREFIXES) {
+            prefix = OTHER;
+        }
+        return meters.computeIfAbsent(prefix, p -> new PrefixMeters(registry, p));
+    }
+
+    /**
+     * 同一个前缀下的所有指标，按操作计时的 Timer 在第一次用到时才注册
+     */
+    private static final class PrefixMeters {
+
+        private static final int OPERATIONS = LockOperation.values().length;
+
+        private final MeterRegistry registry;
+        private final String prefix;
+        // 并发初始化时 registry 对相同 id 返回同一个 Timer，无需加锁
+        private final Timer[] acquired = new Timer[OPERATIONS];
+        private final Timer[] failed = new Timer[OPERATIONS];
+        private final Timer[] released = new Timer[OPERATIONS];
+        private final Timer held;
+        private final Counter rejected;
+        private final Counter renewed;
+        private final Counter lost;
+        private final Counter renewalError;
+
+        private PrefixMeters(MeterRegistry registry, String prefix) {
+            this.registry = registry;
+            this.prefix = prefix;
+            held = Timer.builder("distributed.lock.held")
+                    .tag("prefix", prefix)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            rejected = Counter.builder("distributed.lock.rejected")
+                    .tag("prefix", prefix)
+                    .register(registry);
+            renewed = renewalCounter("renewed");
+            lost = renewalCounter("lost");
+            renewalError = renewalCounter("error");
+        }
+
+        private Timer acquired(LockOperation operation) {
+            Timer timer = acquired[operation.ordinal()];
+            if (timer == null) {
+                timer = acquireTimer(operation, "acquired");
+                acquired[operation.ordinal()] = timer;
+            }
+            return timer;
+        }
+
+        private Timer failed(LockOperation operation) {
+            Timer timer = failed[operation.ordinal()];
+            if (timer == null) {
+                timer = acquireTimer(operation, "failed");
+                failed[operation.ordinal()] = timer;
+            }
+            return timer;
+        }
+
+        private Timer released(LockOperation operation) {
+            Timer timer = released[operation.ordinal()];
+            if (timer == null) {
+                timer = Timer.builder("distributed.lock.release")
+                        .tag("backend", operation.getBackend())
+                        .tag("operation", operation.getOperation())
+                        .tag("prefix", prefix)
+                        .register(registry);
+                released[operation.ordinal()] = timer;
+            }
+            return timer;
+        }
+
+        private Timer acquireTimer(LockOperation operation, String result) {
+            return Timer.builder("distributed.lock.acquire")
+                    .tag("backend", operation.getBackend())
+                    .tag("operation", operation.getOperation())
+                    .tag("prefix", prefix)
+                    .tag("result", result)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+
+        private Counter renewalCounter(String result) {
+            return Counter.builder("distributed.lock.renewal")
+                    .tag("prefix", prefix)
+                    .tag("result", result)
+                    .register(registry);
+        }
+    }
+}
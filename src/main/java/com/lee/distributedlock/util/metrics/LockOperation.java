@@ -0,0 +1,32 @@
+package com.lee.distributedlock.util.metrics;
+
+/**
+ * 被计时的加锁/解锁操作
+ */
+public enum LockOperation {
+
+    REDIS_TRY_LOCK("redis", "tryLock"),
+    REDIS_LOCK_NOT_SAFELY("redis", "lockNotSafely"),
+    REDIS_LOCK("redis", "lock"),
+    REDIS_UNLOCK("redis", "unlock"),
+    REDIS_FAIR_LOCK("redis", "fairLock"),
+    REDIS_FAIR_UNLOCK("redis", "fairUnlock"),
+    ZK_LOCK("zookeeper", "getLock"),
+    ZK_UNLOCK("zookeeper", "releaseLock");
+
+    private final String backend;
+    private final String operation;
+
+    LockOperation(String backend, String operation) {
+        this.backend = backend;
+        this.operation = operation;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+}
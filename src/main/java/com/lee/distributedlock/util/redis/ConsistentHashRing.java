@@ -0,0 +1,111 @@
+package com.lee.distributedlock.util.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一致性哈希环（不可变）
+ * 每个节点按 "{name}#{i}" 在环上放 virtualNodes 个虚拟节点，key 落在顺时针方向的第一个虚拟节点上；
+ * 增加一个节点时只有落到它的虚拟节点上的 key（约 1/N）会迁移，其余 key 的归属不变；
+ * 迁移本身不做任何协调，用作锁分片时节点集合的变更必须停机进行（见 ShardedLockConfiguration）。
+ * <p>
+ * 与 redis cluster 相同，key 中含有非空的 {hash tag} 时只对花括号内的部分求哈希，
+ * 例如 order:{42}:pay 与 order:{42}:ship 总在同一个节点上
+ *
+ * @param <T> 节点类型
+ */
+public final class ConsistentHashRing<T> {
+
+    private final long[] points;
+    private final List<T> owners;
+    private final Map<String, T> nodes;
+
+    /**
+     * @param nodes        节点名 -> 节点，节点名决定虚拟节点的位置，应在各客户端之间保持一致（如 host:port）
+     * @param virtualNodes 每个节点的虚拟节点数
+     */
+    public ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("一致性哈希环至少需要一个节点");
+        }
+        this.nodes = Collections.unmodifiableMap(new LinkedHashMap<>(nodes));
+        virtualNodes = Math.max(1, virtualNodes);
+        int size = nodes.size() * virtualNodes;
+        long[][] entries = new long[size][2];
+        List<T> nodeList = new ArrayList<>(nodes.values());
+        int n = 0;
+        int nodeIndex = 0;
+        for (String name : nodes.keySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                entries[n][0] = hash(name + "#" + i);
+                entries[n][1] = nodeIndex;
+                n++;
+            }
+            nodeIndex++;
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[size];
+        List<T> owners = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            points[i] = entries[i][0];
+            owners.add(nodeList.get((int) entries[i][1]));
+        }
+        this.owners = owners;
+    }
+
+    /**
+     * @param key 锁key
+     * @return key 所在的节点
+     */
+    public T nodeFor(String key) {
+        long h = hash(hashTagOf(key));
+        int index = Arrays.binarySearch(points, h);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == points.length) {
+                index = 0;
+            }
+        }
+        return owners.get(index);
+    }
+
+    public Map<String, T> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 取 key 中第一个非空的 {...}，没有则返回 key 本身
+     */
+    static String hashTagOf(String key) {
+        int start = key.indexOf('{');
+        if (start >= 0) {
+            int end = key.indexOf('}', start + 1);
+            if (end > start + 1) {
+                return key.substring(start + 1, end);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * FNV-1a 64 位哈希，再经过 murmur3 的 fmix64 打散，保证相近的 key 在环上分布均匀
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
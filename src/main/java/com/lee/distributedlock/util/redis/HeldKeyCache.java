@@ -0,0 +1,117 @@
+package com.lee.distributedlock.util.redis;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已被他人持有的锁 key 的本地缓存（可选，distributed-lock.near-cache.enabled=true 开启）
+ * 只尝试一次的加锁（waitTime <= 0，即防重复提交）失败时记下该 key 及锁的剩余过期时间（PTTL），
+ * 之后在过期前对同一个 key 的加锁直接在本地判定失败，不再访问 redis；
+ * 通过模式订阅 "distributed-lock:release:*" 接收所有锁的释放通知，锁释放后立即失效
+ * <p>
+ * 缓存条数有上限，满了先清理过期条目，仍然满时随机淘汰；
+ * 锁被续期后缓存条目会早于锁过期，之后的请求重新访问 redis 并再次缓存，只会多一次往返，不会误判
+ */
+@Component
+public class HeldKeyCache implements MessageListener, InitializingBean {
+
+    private final boolean enabled;
+    private final int maxSize;
+    // key -> 过期时刻（System.nanoTime()）
+    private final ConcurrentMap<String, Long> heldKeys = new ConcurrentHashMap<>();
+
+    @Autowired
+    private LockReleaseSubscriber releaseSubscriber;
+
+    public HeldKeyCache(@Value("${distributed-lock.near-cache.enabled:false}") boolean enabled,
+                        @Value("${distributed-lock.near-cache.max-size:10000}") int maxSize) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            releaseSubscriber.listenAll(this);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param lockKey 锁key
+     * @return 该 key 已知被他人持有且尚未过期返回true
+     */
+    public boolean isHeld(String lockKey) {
+        if (!enabled) {
+            return false;
+        }
+        Long expireAt = heldKeys.get(lockKey);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt - System.nanoTime() > 0) {
+            return true;
+        }
+        heldKeys.remove(lockKey, expireAt);
+        return false;
+    }
+
+    /**
+     * 记录加锁失败的 key
+     *
+     * @param lockKey 锁key
+     * @param ttl     锁的剩余毫秒数，小于等于0（没有过期时间或未知）时不缓存
+     */
+    public void held(String lockKey, long ttl) {
+        if (!enabled || ttl <= 0) {
+            return;
+        }
+        if (heldKeys.size() >= maxSize && !heldKeys.containsKey(lockKey)) {
+            evict();
+        }
+        heldKeys.put(lockKey, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl));
+    }
+
+    public void invalidate(String lockKey) {
+        heldKeys.remove(lockKey);
+    }
+
+    public int size() {
+        return heldKeys.size();
+    }
+
+    /**
+     * 释放通知：频道为 "distributed-lock:release:{key}"
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        if (channel.startsWith(LockReleaseSubscriber.CHANNEL_PREFIX)) {
+            heldKeys.remove(channel.substring(LockReleaseSubscriber.CHANNEL_PREFIX.length()));
+        }
+    }
+
+    private void evict() {
+        final long now = System.nanoTime();
+        heldKeys.values().removeIf(expireAt -> expireAt - now <= 0);
+        Iterator<Map.Entry<String, Long>> it = heldKeys.entrySet().iterator();
+        while (heldKeys.size() >= maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
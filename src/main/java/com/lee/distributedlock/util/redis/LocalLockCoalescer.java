@@ -0,0 +1,127 @@
+package com.lee.distributedlock.util.redis;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 本地锁合并层，位于 redis 锁之前
+ * 同一个 key 的本地线程先竞争一个本地许可（公平信号量），只有拿到许可的线程才去 redis 加锁，
+ * 其余线程在进程内排队，因此 redis 上的竞争只与节点数有关，与每个节点的线程数无关；
+ * 失败的 SET NX（重复提交）同样在本地就被拒绝。
+ * <p>
+ * 每个 key 的本地许可按引用计数创建，最后一个使用者离开时删除，空闲的 key 不占内存；
+ * 同时存在的 key 数超过 max-keys 时新的 key 不再合并，直接访问 redis。
+ * 许可不绑定线程，加锁与解锁可以在不同线程中进行
+ * <p>
+ * distributed-lock.local-coalescing.enabled  是否开启，默认true
+ * distributed-lock.local-coalescing.max-keys 同时合并的 key 数上限，默认10000
+ */
+@Component
+public class LocalLockCoalescer {
+
+    private final boolean enabled;
+    private final int maxKeys;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public LocalLockCoalescer(@Value("${distributed-lock.local-coalescing.enabled:true}") boolean enabled,
+                              @Value("${distributed-lock.local-coalescing.max-keys:10000}") int maxKeys) {
+        this.enabled = enabled;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * 获取 key 的本地许可
+     *
+     * @param lockKey      锁key
+     * @param owner        锁的持有者，release() 时校验
+     * @param timeoutNanos 最长等待时间，小于等于0时只尝试一次
+     * @return 获得许可（或未开启、超出上限而不合并）返回true，超时或被中断返回false
+     */
+    public boolean acquire(String lockKey, String owner, long timeoutNanos) {
+        if (!enabled) {
+            return true;
+        }
+        Entry entry = entries.compute(lockKey, (key, e) -> {
+            if (e == null) {
+                if (entries.size() >= maxKeys) {
+                    return null;
+                }
+                e = new Entry();
+            }
+            e.refs++;
+            return e;
+        });
+        if (entry == null) {
+            return true;
+        }
+        boolean acquired;
+        try {
+            acquired = timeoutNanos <= 0
+                    ? entry.permit.tryAcquire()
+                    : entry.permit.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (acquired) {
+            entry.holder.set(owner);
+            return true;
+        }
+        this.leave(lockKey, entry);
+        return false;
+    }
+
+    /**
+     * 归还 owner 持有的本地许可，未持有时什么都不做
+     * 同一次持有可能被并发归还多次（解锁与看门狗的租约丢失回调），只有把持有者 CAS 为空的那一次真正归还
+     *
+     * @param lockKey 锁key
+     * @param owner   锁的持有者
+     */
+    public void release(String lockKey, String owner) {
+        Entry entry = entries.get(lockKey);
+        if (entry == null) {
+            return;
+        }
+        // 持有者按 equals 比较，CAS 的是读到的那个引用
+        String holder;
+        do {
+            holder = entry.holder.get();
+            if (!owner.equals(holder)) {
+                return;
+            }
+        } while (!entry.holder.compareAndSet(holder, null));
+        entry.permit.release();
+        this.leave(lockKey, entry);
+    }
+
+    /**
+     * @return 当前有使用者的 key 数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void leave(String lockKey, Entry entry) {
+        entries.computeIfPresent(lockKey, (key, e) -> {
+            if (e != entry) {
+                return e;
+            }
+            return --e.refs <= 0 ? null : e;
+        });
+    }
+
+    private static final class Entry {
+        // 公平：本地等待者按到达顺序获得许可
+        private final Semaphore permit = new Semaphore(1, true);
+        private final AtomicReference<String> holder = new AtomicReference<>();
+        // 只在 entries.compute() 中修改
+        private int refs;
+    }
+}
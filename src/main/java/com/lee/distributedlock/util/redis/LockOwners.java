@@ -0,0 +1,85 @@
+package com.lee.distributedlock.util.redis;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 锁持有者标识的生成器，代替 UUID.randomUUID()
+ * <p>
+ * 标识形如 "进程标识:线程序号:序号"（十六进制）：
+ * 进程标识在类加载时随机生成一次；线程序号在线程第一次使用时从全局计数器领取，JVM 内不会重复
+ * （不用 Thread.getId()，线程结束后它的 id 会被新线程复用）；序号是线程私有的自增计数。
+ * 生成时只访问当前线程自己的状态，不经过 UUID.randomUUID() 共用的 SecureRandom，
+ * 字符直接写入线程私有的缓冲区，每个标识只分配结果字符串本身
+ */
+public final class LockOwners {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char SEPARATOR = ':';
+    private static final int MAX_HEX_DIGITS = 16;
+
+    private static final char[] NODE = new char[MAX_HEX_DIGITS];
+    private static final AtomicLong THREADS = new AtomicLong();
+    private static final ThreadLocal<Sequence> SEQUENCE = ThreadLocal.withInitial(Sequence::new);
+
+    static {
+        long node = new SecureRandom().nextLong();
+        for (int i = NODE.length - 1; i >= 0; i--) {
+            NODE[i] = HEX[(int) (node & 0xF)];
+            node >>>= 4;
+        }
+    }
+
+    private LockOwners() {
+    }
+
+    /**
+     * @return 一个新的持有者标识，进程内、进程间都不重复
+     */
+    public static String next() {
+        return SEQUENCE.get().next();
+    }
+
+    /**
+     * @return 当前线程的持有者标识（"进程标识:线程序号"），同一线程每次返回同一个实例，用于可重入锁
+     */
+    public static String currentThread() {
+        return SEQUENCE.get().thread;
+    }
+
+    /**
+     * 写入不带前导0的十六进制
+     *
+     * @return 写入后的位置
+     */
+    private static int writeHex(char[] buffer, int pos, long value) {
+        int digits = Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(value) + 3) >>> 2);
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buffer[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        return pos + digits;
+    }
+
+    private static final class Sequence {
+        // 进程标识 + ':' + 线程序号 + ':' + 序号
+        private final char[] buffer = new char[NODE.length + 1 + MAX_HEX_DIGITS + 1 + MAX_HEX_DIGITS];
+        private final int prefixLength;
+        private final String thread;
+        private long counter;
+
+        private Sequence() {
+            System.arraycopy(NODE, 0, buffer, 0, NODE.length);
+            int pos = NODE.length;
+            buffer[pos++] = SEPARATOR;
+            pos = writeHex(buffer, pos, THREADS.incrementAndGet());
+            this.thread = new String(buffer, 0, pos);
+            buffer[pos++] = SEPARATOR;
+            this.prefixLength = pos;
+        }
+
+        private String next() {
+            return new String(buffer, 0, writeHex(buffer, prefixLength, ++counter));
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.lee.distributedlock.util.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 锁释放通知的订阅者
+ * 解锁时向 "distributed-lock:release:{key}" 频道发布消息，阻塞等待锁的客户端只订阅自己关心的 key，
+ * 收到通知后才重新尝试加锁，等待期间不会向 redis 发送任何加锁命令；
+ * 同一个 key 的所有本地等待者共用一次订阅，最后一个等待者离开时退订
+ */
+@Slf4j
+@Component
+public class LockReleaseSubscriber implements InitializingBean, DisposableBean {
+
+    /**
+     * 锁释放频道的前缀
+     */
+    public static final String CHANNEL_PREFIX = "distributed-lock:release:";
+
+    /**
+     * 释放消息的内容为该值时唤醒该 key 的所有本地等待者（例如写锁释放后所有读者都可以进入），
+     * 否则每条消息只唤醒一个等待者
+     */
+    public static final String WAKE_ALL = "*";
+
+    /**
+     * 响应式加锁时 tryAcquire 返回该值表示加锁成功（响应式流中不能传递 null）
+     */
+    public static final long ACQUIRED = Long.MIN_VALUE;
+
+    @Autowired
+    private RedisConnectionFactory connectionFactory;
+
+    // 所有订阅共用一个连接
+    private final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+
+    // key -> 该 key 的本地等待者
+    private final ConcurrentMap<String, ReleaseEntry> entries = new ConcurrentHashMap<>();
+
+    public LockReleaseSubscriber() {
+    }
+
+    /**
+     * 订阅指定 redis 实例的释放通知，供不由 spring 管理的实例使用（如 ShardedRedisLock 的每个分片），
+     * 需自行调用 afterPropertiesSet() 和 destroy()
+     */
+    public LockReleaseSubscriber(RedisConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    public static String channelOf(String lockKey) {
+        return CHANNEL_PREFIX + lockKey;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        container.setConnectionFactory(connectionFactory);
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    /**
+     * 阻塞加锁的通用等待流程
+     * 第一次加锁失败后订阅该 key 的释放频道，之后只在收到释放通知、或锁的剩余过期时间耗尽时才重试，
+     * 等待期间不会向 redis 发送任何加锁命令
+     *
+     * @param lockKey    锁key
+     * @param waitTime   最长等待时间，小于等于0时只尝试一次
+     * @param unit       时间单位
+     * @param tryAcquire 尝试加锁一次，成功返回null，失败返回锁的剩余毫秒数（小于0表示未知）
+     * @return 加锁成功返回true，超时或被中断返回false
+     */
+    public boolean acquire(String lockKey, long waitTime, TimeUnit unit, Supplier<Long> tryAcquire) {
+        Long ttl = tryAcquire.get();
+        if (ttl == null) {
+            return true;
+        }
+        if (waitTime <= 0) {
+            return false;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        ReleaseEntry entry = this.subscribe(lockKey);
+        try {
+            while (true) {
+                // 订阅之后再试一次，避免错过订阅之前发出的释放通知
+                ttl = tryAcquire.get();
+                if (ttl == null) {
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                // ttl < 0 表示锁没有过期时间，只能等通知或等到超时
+                if (ttl > 0) {
+                    remaining = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(ttl));
+                }
+                entry.await(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            this.unsubscribe(lockKey, entry);
+        }
+    }
+
+    /**
+     * acquire() 的非阻塞版本，等待期间不占用线程
+     *
+     * @param lockKey    锁key
+     * @param waitTime   最长等待时间，小于等于0时只尝试一次
+     * @param unit       时间单位
+     * @param tryAcquire 尝试加锁一次，成功返回 ACQUIRED，失败返回锁的剩余毫秒数（小于0表示未知）
+     * @return 加锁成功发出true，超时发出false
+     */
+    public Mono<Boolean> acquireReactive(String lockKey, long waitTime, TimeUnit unit, Supplier<Mono<Long>> tryAcquire) {
+        return tryAcquire.get().flatMap(ttl -> {
+            if (ttl == ACQUIRED) {
+                return Mono.just(Boolean.TRUE);
+            }
+            if (waitTime <= 0) {
+                return Mono.just(Boolean.FALSE);
+            }
+            final long deadline = System.nanoTime() + unit.toNanos(waitTime);
+            // 订阅/退订会同步等待 redis 应答，不能在 lettuce 的 IO 线程上执行
+            return Mono.using(() -> this.subscribe(lockKey),
+                    entry -> this.retryReactive(entry, deadline, tryAcquire),
+                    entry -> this.unsubscribe(lockKey, entry))
+                    .subscribeOn(Schedulers.elastic());
+        });
+    }
+
+    private Mono<Boolean> retryReactive(ReleaseEntry entry, long deadline, Supplier<Mono<Long>> tryAcquire) {
+        return tryAcquire.get().flatMap(ttl -> {
+            if (ttl == ACQUIRED) {
+                return Mono.just(Boolean.TRUE);
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return Mono.just(Boolean.FALSE);
+            }
+            if (ttl > 0) {
+                remaining = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(ttl));
+            }
+            CompletableFuture<Boolean> wakeUp = entry.awaitAsync();
+            return Mono.fromFuture(wakeUp)
+                    .timeout(Duration.ofNanos(remaining), Mono.fromSupplier(() -> entry.cancelAsync(wakeUp)))
+                    .then(Mono.defer(() -> this.retryReactive(entry, deadline, tryAcquire)));
+        });
+    }
+
+    /**
+     * 模式订阅所有锁的释放频道，listener 收到的消息频道为 "distributed-lock:release:{key}"
+     * 每一次解锁都会通知到该 listener，只给需要感知全部释放事件的组件使用（如 HeldKeyCache）
+     *
+     * @param listener 释放通知的监听者
+     */
+    public void listenAll(MessageListener listener) {
+        container.addMessageListener(listener, new PatternTopic(CHANNEL_PREFIX + "*"));
+    }
+
+    /**
+     * 登记为 lockKey 的等待者，必要时订阅该 key 的释放频道
+     *
+     * @param lockKey 锁key
+     * @return 等待者共用的通知入口，用完必须调用 unsubscribe()
+     */
+    public ReleaseEntry subscribe(String lockKey) {
+        ReleaseEntry entry = entries.compute(lockKey, (key, e) -> {
+            if (e == null) {
+                e = new ReleaseEntry();
+            }
+            e.waiters++;
+            return e;
+        });
+        entry.ensureSubscribed(container, lockKey);
+        return entry;
+    }
+
+    /**
+     * 注销等待者，最后一个等待者离开时退订
+     *
+     * @param lockKey 锁key
+     * @param entry   subscribe() 返回的通知入口
+     */
+    public void unsubscribe(String lockKey, ReleaseEntry entry) {
+        ReleaseEntry remaining = entries.computeIfPresent(lockKey, (key, e) -> {
+            if (e != entry) {
+                return e;
+            }
+            return --e.waiters <= 0 ? null : e;
+        });
+        if (remaining != entry) {
+            entry.unsubscribe(container);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        container.destroy();
+    }
+
+    /**
+     * 同一个 key 的等待者共用的通知入口，每收到一条释放消息唤醒一个等待者，消息为 WAKE_ALL 时唤醒全部
+     */
+    public static final class ReleaseEntry implements MessageListener {
+
+        private final Semaphore latch = new Semaphore(0);
+        // 非阻塞等待者，优先于阻塞等待者被唤醒
+        private final ConcurrentLinkedQueue<CompletableFuture<Boolean>> asyncWaiters = new ConcurrentLinkedQueue<>();
+        // 只在 entries.compute() 中修改
+        private volatile int waiters;
+        private boolean subscribed;
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            byte[] body = message.getBody();
+            if (body.length == 1 && body[0] == WAKE_ALL.charAt(0)) {
+                CompletableFuture<Boolean> waiter;
+                while ((waiter = asyncWaiters.poll()) != null) {
+                    waiter.complete(Boolean.TRUE);
+                }
+                latch.release(Math.max(1, waiters));
+                return;
+            }
+            CompletableFuture<Boolean> waiter;
+            while ((waiter = asyncWaiters.poll()) != null) {
+                // 已超时取消的等待者不消耗这次通知
+                if (waiter.complete(Boolean.TRUE)) {
+                    return;
+                }
+            }
+            latch.release();
+        }
+
+        /**
+         * 非阻塞地等待释放通知
+         *
+         * @return 收到通知时完成
+         */
+        public CompletableFuture<Boolean> awaitAsync() {
+            CompletableFuture<Boolean> waiter = new CompletableFuture<>();
+            asyncWaiters.add(waiter);
+            return waiter;
+        }
+
+        /**
+         * 取消 awaitAsync() 的等待
+         *
+         * @return 取消前是否已收到通知
+         */
+        public boolean cancelAsync(CompletableFuture<Boolean> waiter) {
+            boolean notified = !waiter.complete(Boolean.FALSE) && waiter.join();
+            asyncWaiters.remove(waiter);
+            return notified;
+        }
+
+        /**
+         * 等待释放通知
+         *
+         * @param timeoutNanos 最长等待时间，单位: 纳秒
+         * @return 收到通知返回true，超时返回false
+         */
+        public boolean await(long timeoutNanos) throws InterruptedException {
+            return latch.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized void ensureSubscribed(RedisMessageListenerContainer container, String lockKey) {
+            if (!subscribed) {
+                container.addMessageListener(this, new ChannelTopic(channelOf(lockKey)));
+                subscribed = true;
+            }
+        }
+
+        private synchronized void unsubscribe(RedisMessageListenerContainer container) {
+            if (subscribed) {
+                container.removeMessageListener(this);
+                subscribed = false;
+            }
+        }
+    }
+}
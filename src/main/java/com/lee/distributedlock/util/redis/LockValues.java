@@ -0,0 +1,112 @@
+package com.lee.distributedlock.util.redis;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * lockNotSafely() 写入的锁的值，两种格式：
+ * 文本（encodeText()）：十进制过期时间戳 + '|' + 持有者，与旧版本写入的 "时间戳|uuid" 相同；
+ * 二进制（encode()）：8字节大端的过期时间戳 + '|' + 持有者，解码只读前8个字节。
+ * 两者都直接编码为 byte[]，不经过字符串拼接；持有者都以 "|持有者" 结尾，解锁脚本按后缀校验持有者的方式不变。
+ * <p>
+ * deadlineOf() 两种格式都能读：文本值第9个字节一定是数字，二进制值一定是 '|'。
+ * 旧版本只能解析文本格式，滚动发布期间新旧节点并存时必须写文本格式，
+ * 全部节点升级后才能打开 distributed-lock.binary-lock-values
+ */
+public final class LockValues {
+
+    static final byte DELIMITER = '|';
+
+    private LockValues() {
+    }
+
+    /**
+     * @param deadline 过期时间戳，单位: 毫秒
+     * @param owner    锁的持有者
+     * @return 锁的值
+     */
+    public static byte[] encode(long deadline, String owner) {
+        final int length = owner.length();
+        byte[] value = new byte[Long.BYTES + 1 + length];
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            value[i] = (byte) deadline;
+            deadline >>>= 8;
+        }
+        value[Long.BYTES] = DELIMITER;
+        for (int i = 0; i < length; i++) {
+            char c = owner.charAt(i);
+            if (c >= 0x80) {
+                // 非 ASCII 的持有者标识，按 UTF-8 重新编码
+                return encodeUtf8(value, owner);
+            }
+            value[Long.BYTES + 1 + i] = (byte) c;
+        }
+        return value;
+    }
+
+    /**
+     * 文本格式，旧版本也能解析
+     *
+     * @param deadline 过期时间戳，单位: 毫秒，不小于0
+     * @param owner    锁的持有者
+     * @return 锁的值
+     */
+    public static byte[] encodeText(long deadline, String owner) {
+        final int digits = digitsOf(deadline);
+        final int length = owner.length();
+        byte[] value = new byte[digits + 1 + length];
+        long remaining = deadline;
+        for (int i = digits - 1; i >= 0; i--) {
+            value[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        value[digits] = DELIMITER;
+        for (int i = 0; i < length; i++) {
+            char c = owner.charAt(i);
+            if (c >= 0x80) {
+                // 非 ASCII 的持有者标识，按 UTF-8 编码
+                return (deadline + "|" + owner).getBytes(StandardCharsets.UTF_8);
+            }
+            value[digits + 1 + i] = (byte) c;
+        }
+        return value;
+    }
+
+    /**
+     * @param value 锁的值
+     * @return 过期时间戳，单位: 毫秒
+     */
+    public static long deadlineOf(byte[] value) {
+        long deadline = 0;
+        if (value.length > Long.BYTES && value[Long.BYTES] == DELIMITER) {
+            for (int i = 0; i < Long.BYTES; i++) {
+                deadline = (deadline << 8) | (value[i] & 0xFF);
+            }
+            return deadline;
+        }
+        // 旧版本写入的十进制时间戳
+        for (byte b : value) {
+            if (b < '0' || b > '9') {
+                break;
+            }
+            deadline = deadline * 10 + (b - '0');
+        }
+        return deadline;
+    }
+
+    private static int digitsOf(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static byte[] encodeUtf8(byte[] prefix, String owner) {
+        byte[] bytes = owner.getBytes(StandardCharsets.UTF_8);
+        byte[] value = new byte[Long.BYTES + 1 + bytes.length];
+        System.arraycopy(prefix, 0, value, 0, Long.BYTES + 1);
+        System.arraycopy(bytes, 0, value, Long.BYTES + 1, bytes.length);
+        return value;
+    }
+}
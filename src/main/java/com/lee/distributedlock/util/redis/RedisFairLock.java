@@ -0,0 +1,178 @@
+package com.lee.distributedlock.util.redis;
+
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.metrics.LockOperation;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 redis 的公平锁（FIFO）
+ * 每个 key 对应三个结构：
+ * {key}           锁本身，与 RedisLockHelper 相同（值为持有者，带 PX 过期时间），续期也复用它的看门狗
+ * {key}:queue     list，按到达顺序排队的等待者
+ * {key}:timeouts  zset，等待者 -> 排队资格的到期时间（redis 服务端毫秒时间戳）
+ * <p>
+ * 锁空闲且自己排在队首（或队列为空）时才能获得锁，后到的请求不能插队；
+ * 等待者每次重试都会刷新自己的到期时间（锁的剩余时间 + queue-grace-millis），宕机的等待者到期后从队首清理掉；
+ * 解锁时只通知队首的等待者（每个等待者订阅自己的频道），一次释放只产生一次唤醒，
+ * 因此热点 key 上每个等待者的等待时间只与排在它前面的请求数有关，不会被后来者反复抢走
+ */
+@Component
+public class RedisFairLock {
+
+    private static final Long RELEASE_SUCCESS = 1L;
+
+    private static final String QUEUE_SUFFIX = ":queue";
+    private static final String TIMEOUT_SUFFIX = ":timeouts";
+    // 等待者专属频道：distributed-lock:release:{key}|{owner}
+    private static final String OWNER_DELIMITER = "|";
+
+    // 取 redis 服务端时间，并从队首清理排队资格已到期的等待者
+    private static final String PRUNE =
+            "redis.replicate_commands() " +
+                    "local t = redis.call('time') " +
+                    "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+                    "while true do " +
+                    "  local first = redis.call('lindex', KEYS[2], 0) " +
+                    "  if not first then break end " +
+                    "  local d = tonumber(redis.call('zscore', KEYS[3], first)) " +
+                    "  if d and d > now then break end " +
+                    "  redis.call('lpop', KEYS[2]) " +
+                    "  redis.call('zrem', KEYS[3], first) " +
+                    "end ";
+
+    // 唤醒队首的等待者
+    private static final String NOTIFY_HEAD =
+            "local head = redis.call('lindex', KEYS[2], 0) " +
+                    "if head then redis.call('publish', ARGV[2] .. head, head) end ";
+
+    // 加锁：ARGV 为 owner, 租约毫秒数, 排队宽限毫秒数, 是否排队(1/0)
+    // 成功返回 nil，失败返回建议的最长等待毫秒数（锁的剩余时间，或锁空闲时队首等待者排队资格的剩余时间）
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            PRUNE +
+                    "local head = redis.call('lindex', KEYS[2], 0) " +
+                    "if redis.call('exists', KEYS[1]) == 0 and (not head or head == ARGV[1]) then " +
+                    "  redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+                    "  if head then " +
+                    "    redis.call('lpop', KEYS[2]) " +
+                    "    redis.call('zrem', KEYS[3], ARGV[1]) " +
+                    "  end " +
+                    "  return nil " +
+                    "end " +
+                    "local ttl = redis.call('pttl', KEYS[1]) " +
+                    "if ttl < 0 then " +
+                    "  ttl = head and (tonumber(redis.call('zscore', KEYS[3], head)) - now) or 0 " +
+                    "end " +
+                    "if ARGV[4] == '1' then " +
+                    "  local deadline = now + ttl + tonumber(ARGV[3]) " +
+                    "  if not redis.call('zscore', KEYS[3], ARGV[1]) then redis.call('rpush', KEYS[2], ARGV[1]) end " +
+                    "  redis.call('zadd', KEYS[3], deadline, ARGV[1]) " +
+                    "  if redis.call('pttl', KEYS[3]) < deadline - now then " +
+                    "    redis.call('pexpire', KEYS[2], deadline - now) " +
+                    "    redis.call('pexpire', KEYS[3], deadline - now) " +
+                    "  end " +
+                    "end " +
+                    "return ttl",
+            Long.class);
+
+    // 解锁：ARGV 为 owner, 等待者频道前缀；校验持有者、删除锁并唤醒队首
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            PRUNE +
+                    "if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end " +
+                    "redis.call('del', KEYS[1]) " +
+                    NOTIFY_HEAD +
+                    "return 1",
+            Long.class);
+
+    // 放弃等待：ARGV 为 owner, 等待者频道前缀；离开队列，若自己是队首且锁空闲则唤醒下一个
+    private static final RedisScript<Long> CANCEL_SCRIPT = new DefaultRedisScript<>(
+            PRUNE +
+                    "local wasHead = redis.call('lindex', KEYS[2], 0) == ARGV[1] " +
+                    "redis.call('lrem', KEYS[2], 1, ARGV[1]) " +
+                    "redis.call('zrem', KEYS[3], ARGV[1]) " +
+                    "if wasHead and redis.call('exists', KEYS[1]) == 0 then " +
+                    NOTIFY_HEAD +
+                    "end " +
+                    "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    @Autowired
+    private RedisLockHelper redisLockHelper;
+    @Autowired
+    private LeaseWatchdog leaseWatchdog;
+    @Autowired
+    private LockReleaseSubscriber releaseSubscriber;
+    @Autowired
+    private LockMetrics lockMetrics;
+
+    private final long queueGraceMillis;
+
+    public RedisFairLock(@Value("${distributed-lock.fair.queue-grace-millis:2000}") long queueGraceMillis) {
+        this.queueGraceMillis = queueGraceMillis;
+    }
+
+    /**
+     * 按到达顺序获取锁
+     *
+     * @param lockKey   lockKey
+     * @param owner     锁的持有者（最好是唯一键的）
+     * @param leaseTime 租约时长
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次（有人排队时同样失败，不插队）
+     * @param unit      时间单位
+     * @return true or false
+     */
+    public boolean lock(String lockKey, String owner, long leaseTime, long waitTime, TimeUnit unit) {
+        final long leaseMillis = unit.toMillis(leaseTime);
+        final List<String> keys = keys(lockKey);
+        final String enqueue = waitTime > 0 ? "1" : "0";
+        final long start = lockMetrics.start();
+        // 订阅自己的频道，只在轮到自己时被唤醒
+        boolean locked = releaseSubscriber.acquire(lockKey + OWNER_DELIMITER + owner, waitTime, unit,
+                () -> redisTemplate.execute(ACQUIRE_SCRIPT, keys, owner, String.valueOf(leaseMillis),
+                        String.valueOf(queueGraceMillis), enqueue));
+        if (locked && !redisLockHelper.watch(lockKey, owner, leaseMillis)) {
+            // 看门狗登记表已满，锁不会续期，放弃这次加锁
+            this.unlock(lockKey, owner);
+            locked = false;
+        } else if (!locked && waitTime > 0) {
+            // 超时或被中断，让出排队位置
+            redisTemplate.execute(CANCEL_SCRIPT, keys, owner, ownerChannelPrefix(lockKey));
+        }
+        lockMetrics.acquire(LockOperation.REDIS_FAIR_LOCK, lockKey, start, locked);
+        return locked;
+    }
+
+    /**
+     * 释放锁并唤醒排在队首的等待者
+     *
+     * @param lockKey key
+     * @param owner   锁的持有者
+     * @return 锁仍由 owner 持有并释放成功返回true
+     */
+    public boolean unlock(String lockKey, String owner) {
+        leaseWatchdog.cancel(lockKey, owner);
+        final long start = lockMetrics.start();
+        Long result = redisTemplate.execute(RELEASE_SCRIPT, keys(lockKey), owner, ownerChannelPrefix(lockKey));
+        lockMetrics.release(LockOperation.REDIS_FAIR_UNLOCK, lockKey, start);
+        return RELEASE_SUCCESS.equals(result);
+    }
+
+    private static String ownerChannelPrefix(String lockKey) {
+        return LockReleaseSubscriber.channelOf(lockKey + OWNER_DELIMITER);
+    }
+
+    private static List<String> keys(String lockKey) {
+        return Arrays.asList(lockKey, lockKey + QUEUE_SUFFIX, lockKey + TIMEOUT_SUFFIX);
+    }
+}
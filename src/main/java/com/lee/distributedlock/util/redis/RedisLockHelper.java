@@ -1,48 +1,150 @@
 package com.lee.distributedlock.util.redis;
 
-import com.google.common.collect.Lists;
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.metrics.LockOperation;
+import com.lee.distributedlock.util.redis.task.LeaseRenewer;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
 import com.lee.distributedlock.util.redis.task.PostponeTask;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.util.StringUtils;
-import redis.clients.jedis.Jedis;
+import reactor.core.publisher.Mono;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
 
 @Configuration
 @AutoConfigureAfter(RedisAutoConfiguration.class)
-public class RedisLockHelper {
+public class RedisLockHelper implements InitializingBean {
 
     private static final String DELIMITER = "|";
 
     private static final Long RELEASE_SUCCESS = 1L;
     private static final Long POSTPONE_SUCCESS = 1L;
 
-    private static final String LOCK_SUCCESS = "OK";
-    private static final String SET_IF_NOT_EXIST = "NX";
-    private static final String SET_WITH_EXPIRE_TIME = "EX";
-    // 解锁脚本(lua)
-    private static final String RELEASE_LOCK_SCRIPT = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
-    // 延时脚本
-    private static final String POSTPONE_LOCK_SCRIPT = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('expire', KEYS[1], ARGV[2]) else return '0' end";
+    // fencing token 计数器的后缀，每个锁 key 一个计数器，与锁 key 在同一个 hash slot
+    private static final String FENCE_SUFFIX = ":fence";
 
     /**
-     * 如果要求比较高可以通过注入的方式分配
+     * lockReentrant(..., fenced = false) 加锁成功但不签发 fencing token 时的返回值
+     */
+    public static final long UNFENCED = -1L;
+
+    /*
+     * 所有锁脚本都只在类加载时构造一次，DefaultRedisScript 预先算好 SHA1，
+     * 执行时走 EVALSHA，服务端返回 NOSCRIPT 时才回退为 EVAL 上传脚本正文
      */
-    private static final ScheduledExecutorService EXECUTOR_SERVICE =
-            Executors.newScheduledThreadPool(10);
+    // 加锁脚本，加锁失败时返回锁的剩余毫秒数（PTTL），供等待者决定最长等待多久
+    static final RedisScript<Long> ACQUIRE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return nil else return redis.call('pttl', KEYS[1]) end",
+            Long.class);
+    // 加锁并签发 fencing token：成功返回 {1, token}，失败返回 {0, 锁的剩余毫秒数}
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ACQUIRE_FENCED_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+                    "return {1, redis.call('incr', KEYS[2])} " +
+                    "end " +
+                    "return {0, redis.call('pttl', KEYS[1])}",
+            List.class);
+    // 解锁脚本(lua)：校验持有者、删除、发布释放通知在一次往返内原子完成；
+    // 兼容 lock() 写入的 uuid 以及 lockNotSafely() 写入的 "时间戳|uuid"（LockValues）两种值
+    static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('get', KEYS[1]) " +
+                    "if v == ARGV[1] or (v and string.sub(v, -string.len(ARGV[1]) - 1) == '" + DELIMITER + "' .. ARGV[1]) then " +
+                    "redis.call('del', KEYS[1]) " +
+                    "redis.call('publish', ARGV[2], ARGV[1]) " +
+                    "return 1 " +
+                    "end " +
+                    "return 0",
+            Long.class);
+    // 延时脚本
+    static final RedisScript<Long> POSTPONE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+    // 批量延时脚本：KEYS 为各个锁，ARGV 依次为每把锁的持有者、租约毫秒数，返回续期失败的下标（从1开始）
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> BATCH_POSTPONE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "local lost = {} " +
+                    "for i = 1, #KEYS do " +
+                    "  if redis.call('get', KEYS[i]) ~= ARGV[2 * i - 1] or redis.call('pexpire', KEYS[i], ARGV[2 * i]) == 0 then " +
+                    "    lost[#lost + 1] = i " +
+                    "  end " +
+                    "end " +
+                    "return lost",
+            List.class);
+
+    // 延迟解锁脚本：校验持有者后把锁的过期时间设为 delay（剩余时间比 delay 短时同样延长到 delay，保证延迟解锁的语义），由 redis 到期删除；
+    // 同时唤醒所有等待者，让它们按新的剩余时间重新计算等待时长
+    private static final RedisScript<Long> DELAYED_RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('get', KEYS[1]) " +
+                    "if v == ARGV[1] or (v and string.sub(v, -string.len(ARGV[1]) - 1) == '" + DELIMITER + "' .. ARGV[1]) then " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "redis.call('publish', ARGV[3], '" + LockReleaseSubscriber.WAKE_ALL + "') " +
+                    "return 1 " +
+                    "end " +
+                    "return 0",
+            Long.class);
 
     @Autowired
     private StringRedisTemplate redisTemplate;
+    @Autowired
+    private LeaseWatchdog leaseWatchdog;
+    @Autowired
+    private LockReleaseSubscriber releaseSubscriber;
+    @Autowired
+    private LockMetrics lockMetrics;
+    @Autowired
+    private HeldKeyCache heldKeyCache;
+    @Autowired
+    private LocalLockCoalescer localLocks;
+    // 只有 lettuce 连接才有响应式模板，使用 jedis 时异步 API 不可用
+    @Autowired(required = false)
+    private ReactiveStringRedisTemplate reactiveRedisTemplate;
+    // lockNotSafely() 写入二进制的锁的值，旧版本无法解析，所有节点升级后才能打开
+    @Value("${distributed-lock.binary-lock-values:false}")
+    private boolean binaryLockValues;
+
+    // 看门狗回调的续期动作，所有租约共用一个实例，同一批到期的租约合并成一次 lua 调用
+    private final LeaseRenewer postponeRenewer = new LeaseRenewer() {
+        @Override
+        public boolean renew(String key, String owner, long leaseMillis) {
+            return RedisLockHelper.this.renew(key, owner, leaseMillis);
+        }
+
+        @Override
+        public List<PostponeTask> renewAll(List<PostponeTask> leases) {
+            return RedisLockHelper.this.renewAll(leases);
+        }
+    };
+
+    @Override
+    public void afterPropertiesSet() {
+        // 续期失败（锁已丢失）时归还本地许可，本节点的等待者不必等到持有者解锁
+        leaseWatchdog.addLeaseLostListener(localLocks::release);
+    }
 
     /**
      * 获取锁（存在死锁风险）
@@ -64,11 +166,14 @@ public class RedisLockHelper {
      * @return true or false
      */
     public boolean tryLock(final String lockKey, final String value, final long time, final TimeUnit unit) {
-        return redisTemplate.execute(
+        final long start = lockMetrics.start();
+        boolean locked = redisTemplate.execute(
                 (RedisCallback<Boolean>) connection ->
                         connection.set(lockKey.getBytes(), value.getBytes(), Expiration.from(time, unit),
                                 RedisStringCommands.SetOption.SET_IF_ABSENT)
         );
+        lockMetrics.acquire(LockOperation.REDIS_TRY_LOCK, lockKey, start, locked);
+        return locked;
     }
 
     /**
@@ -100,25 +205,35 @@ public class RedisLockHelper {
     public boolean lockNotSafely(String lockKey, final String uuid, long timeout, final TimeUnit unit) {
         // 根据过期时间的单位，换算成毫秒
         final long milliseconds = Expiration.from(timeout, unit).getExpirationTimeInMilliseconds();
+        final long start = lockMetrics.start();
+        final byte[] key = lockKey.getBytes(StandardCharsets.UTF_8);
+        // 锁的值直接编码为 byte[]：过期时间戳 + "|" + uuid
+        final byte[] value = this.lockValue(System.currentTimeMillis() + milliseconds, uuid);
         // 如果缓存中没有当前 key 则进行缓存同时返回 true
-        boolean success = redisTemplate.opsForValue()
-                .setIfAbsent(lockKey, (System.currentTimeMillis() + milliseconds) + DELIMITER + uuid);
+        boolean success = Boolean.TRUE.equals(redisTemplate.execute(
+                (RedisCallback<Boolean>) connection -> connection.setNX(key, value)));
         if (success) {   // 以前未持有锁，加锁成功，设置过期时间
-            redisTemplate.expire(lockKey, timeout, TimeUnit.SECONDS);
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.pExpire(key, milliseconds));
+            lockMetrics.acquire(LockOperation.REDIS_LOCK_NOT_SAFELY, lockKey, start, true);
             return true;
         } else {         // 以前已持有锁
             // 获取上一次的锁过期时间，并设置现在锁的过期时间
-            String oldVal = redisTemplate.opsForValue()
-                    .getAndSet(lockKey, (System.currentTimeMillis() + milliseconds) + DELIMITER + uuid);
-            final String[] oldValues = oldVal.split(Pattern.quote(DELIMITER));
-            // 若上一次的锁过期时间 + 1ms <= 当前时间（锁已过期），获取锁成功，返回true，否则加锁失败false
-            return Long.parseLong(oldValues[0]) + 1 <= System.currentTimeMillis();
+            final byte[] newValue = this.lockValue(System.currentTimeMillis() + milliseconds, uuid);
+            byte[] oldVal = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.getSet(key, newValue));
+            // 若上一次的锁过期时间 + 1ms <= 当前时间（锁已过期，或已被删除），获取锁成功，返回true，否则加锁失败false
+            boolean locked = oldVal == null || LockValues.deadlineOf(oldVal) + 1 <= System.currentTimeMillis();
+            lockMetrics.acquire(LockOperation.REDIS_LOCK_NOT_SAFELY, lockKey, start, locked);
+            return locked;
         }
     }
 
 
+    private byte[] lockValue(long deadline, String uuid) {
+        return binaryLockValues ? LockValues.encode(deadline, uuid) : LockValues.encodeText(deadline, uuid);
+    }
+
     /**
-     * 调用lock同时, 立即开启PostponeTask线程, 线程等待超时时间的2/3时间后, 开始执行锁延时代码,
+     * 调用lock同时, 立即向看门狗登记租约, 时间轮在超时时间的2/3时间后, 开始执行锁延时代码,
      * 如果延时成功, add_information_lock这个key会一直存在于redis服务端, 直到业务逻辑执行完毕,
      * 因此在此过程中, 其他线程无法获取到锁, 也即保证了线程安全性
      *
@@ -131,27 +246,199 @@ public class RedisLockHelper {
      * @return true or false
      */
     public boolean lock(String lockKey, final String uuid, long timeout) {
-        // 加锁
-        Boolean locked = redisTemplate.execute((RedisCallback<Boolean>) redisConnection -> {
-            Jedis jedis = (Jedis) redisConnection.getNativeConnection();
-            String result = jedis.set(lockKey, uuid, SET_IF_NOT_EXIST, SET_WITH_EXPIRE_TIME, timeout);
-            if (LOCK_SUCCESS.equals(result)) {
-                return Boolean.TRUE;
+        // 只尝试一次，加锁成功后向看门狗登记租约, 防止业务逻辑未执行完毕就因锁超时而使锁释放
+        return this.lock(lockKey, uuid, timeout, 0, TimeUnit.SECONDS);
+    }
+
+
+    /**
+     * 阻塞获取锁，最多等待 waitTime 秒
+     *
+     * @param lockKey   lockKey
+     * @param uuid      UUID
+     * @param leaseTime 超时时间，单位: 秒
+     * @param waitTime  最长等待时间，单位: 秒
+     * @return true or false
+     * @see #lock(String, String, long, long, TimeUnit)
+     */
+    public boolean lock(String lockKey, final String uuid, long leaseTime, long waitTime) {
+        return this.lock(lockKey, uuid, leaseTime, waitTime, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 阻塞获取锁
+     * 第一次加锁失败后订阅该 key 的释放频道，之后只在收到释放通知、或锁的剩余过期时间（PTTL）耗尽时才重试，
+     * 等待期间不会向 redis 轮询 SET NX；加锁成功同样向看门狗登记租约。
+     * 不签发 fencing token，也就不会为该 key 创建常驻的计数器，需要 token 时使用 lockFenced()
+     *
+     * @param lockKey   lockKey
+     * @param uuid      UUID
+     * @param leaseTime 超时时间
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @return true or false
+     */
+    public boolean lock(String lockKey, final String uuid, long leaseTime, long waitTime, TimeUnit unit) {
+        return this.acquire(lockKey, uuid, leaseTime, waitTime, unit, null);
+    }
+
+    /**
+     * 阻塞获取锁，并返回本次加锁签发的 fencing token
+     * token 与加锁在同一个 lua 脚本中原子签发，后一个持有者的 token 一定大于前一个持有者的；
+     * 下游存储记录每个资源见过的最大 token，拒绝 token 更小的写入，即可挡住 GC 停顿或续期失败后仍在执行的旧持有者。
+     * 第一次签发时为该 key 创建计数器（见 fenceKeyOf()），之后常驻 redis
+     *
+     * @param lockKey   lockKey
+     * @param uuid      UUID
+     * @param leaseTime 超时时间
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @return 加锁成功返回 fencing token（大于0），失败返回0
+     * @see #lock(String, String, long, long, TimeUnit)
+     */
+    public long lockFenced(String lockKey, final String uuid, long leaseTime, long waitTime, TimeUnit unit) {
+        final long[] token = new long[1];
+        return this.acquire(lockKey, uuid, leaseTime, waitTime, unit, token) ? token[0] : 0L;
+    }
+
+    /**
+     * @param token 不为null时签发 fencing token 并写入其中，为null时只加锁
+     */
+    private boolean acquire(String lockKey, String uuid, long leaseTime, long waitTime, TimeUnit unit, long[] token) {
+        final long leaseMillis = unit.toMillis(leaseTime);
+        final long start = lockMetrics.start();
+        // 只尝试一次时，已知被他人持有的 key 直接在本地判定失败
+        if (waitTime <= 0 && heldKeyCache.isHeld(lockKey)) {
+            lockMetrics.acquire(LockOperation.REDIS_LOCK, lockKey, start, false);
+            return false;
+        }
+        // 先在本地排队，只有本地的胜者才访问 redis
+        final long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        if (!localLocks.acquire(lockKey, uuid, waitTime > 0 ? unit.toNanos(waitTime) : 0L)) {
+            lockMetrics.acquire(LockOperation.REDIS_LOCK, lockKey, start, false);
+            return false;
+        }
+        boolean locked = false;
+        try {
+            locked = releaseSubscriber.acquire(lockKey, waitTime > 0 ? deadline - System.nanoTime() : 0L,
+                    TimeUnit.NANOSECONDS, () -> this.tryAcquire(lockKey, uuid, leaseMillis, token));
+        } finally {
+            // 加锁失败或 redis 异常时都要归还本地许可，否则该 key 在本节点上一直被占用
+            if (!locked) {
+                localLocks.release(lockKey, uuid);
             }
-            return Boolean.FALSE;
-        });
+        }
+        if (locked && !leaseWatchdog.watch(lockKey, uuid, leaseMillis, postponeRenewer, token == null ? 0L : token[0])) {
+            // 看门狗登记表已满，锁不会续期，业务执行超过租约后会与下一个持有者并发执行，放弃这次加锁
+            this.doUnlock(lockKey, uuid);
+            locked = false;
+        }
+        lockMetrics.acquire(LockOperation.REDIS_LOCK, lockKey, start, locked);
+        return locked;
+    }
+
+    /**
+     * 可重入地获取锁，持有者为当前线程
+     * 当前线程已持有该锁时只在看门狗登记表中把持有次数加一，不访问 redis，返回最外层加锁时的 fencing token；
+     * 只有最外层加锁访问 redis，续期由最外层登记的租约负责整条重入链
+     *
+     * @param lockKey   lockKey
+     * @param leaseTime 超时时间
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @return 加锁成功返回 fencing token（大于0），失败返回0
+     * @see #unlockReentrant(String)
+     */
+    public long lockReentrant(String lockKey, long leaseTime, long waitTime, TimeUnit unit) {
+        return this.lockReentrant(lockKey, leaseTime, waitTime, unit, true);
+    }
 
-        if (locked) {
-            // 加锁成功, 启动一个延时线程, 防止业务逻辑未执行完毕就因锁超时而使锁释放
-            PostponeTask postponeTask = new PostponeTask(lockKey, uuid, timeout, this);
-            Thread thread = new Thread(postponeTask);
-            thread.setDaemon(Boolean.TRUE);
-            thread.start();
+    /**
+     * 可重入地获取锁，fenced = false 时不签发 fencing token，不为该 key 创建计数器；
+     * 重入时沿用最外层加锁的结果，最外层没有签发 token 时内层同样拿不到
+     *
+     * @param lockKey   lockKey
+     * @param leaseTime 超时时间
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @param fenced    是否签发 fencing token
+     * @return 加锁失败返回0；成功返回 fencing token（大于0），没有签发 token 时返回 UNFENCED
+     * @see #lockReentrant(String, long, long, TimeUnit)
+     */
+    public long lockReentrant(String lockKey, long leaseTime, long waitTime, TimeUnit unit, boolean fenced) {
+        final String owner = LockOwners.currentThread();
+        PostponeTask held = leaseWatchdog.reenter(lockKey, owner);
+        if (held != null) {
+            return held.getToken() > 0 ? held.getToken() : UNFENCED;
         }
+        if (fenced) {
+            return this.lockFenced(lockKey, owner, leaseTime, waitTime, unit);
+        }
+        return this.acquire(lockKey, owner, leaseTime, waitTime, unit, null) ? UNFENCED : 0L;
+    }
 
-        return locked;
+    /**
+     * 释放当前线程通过 lockReentrant() 获得的锁，持有次数减到0时才向 redis 解锁；
+     * 当前线程没有登记该锁（加锁失败，或租约已丢失）时什么都不做，
+     * 因为同一线程的持有者标识相同，此时解锁会删掉外层调用仍持有的锁
+     *
+     * @param lockKey key
+     * @return 锁仍由当前线程持有返回true
+     */
+    public boolean unlockReentrant(String lockKey) {
+        if (StringUtils.isEmpty(lockKey)) {
+            return false;
+        }
+        final String owner = LockOwners.currentThread();
+        int remaining = leaseWatchdog.exit(lockKey, owner);
+        if (remaining != 0) {
+            return remaining > 0;
+        }
+        return this.doUnlock(lockKey, owner);
     }
 
+    /**
+     * 锁 key 对应的 fencing token 计数器
+     * 每个 key 单调递增，不同 key 之间不共享，避免所有加锁都写同一个热点 key；
+     * key 含 {hash tag} 时直接加后缀，否则把整个 key 作为 hash tag，两者总在同一个 slot，集群模式下不会 CROSSSLOT。
+     * 计数器不设过期时间（每个签发过 token 的 key 常驻一个小字符串，只有 lockFenced() 一类显式要求 token 的加锁才会创建），
+     * redis 未开启持久化时重启后会从1重新计数
+     *
+     * @param lockKey 锁key
+     * @return 计数器的key
+     */
+    public static String fenceKeyOf(String lockKey) {
+        if (!ConsistentHashRing.hashTagOf(lockKey).equals(lockKey)) {
+            return lockKey + FENCE_SUFFIX;
+        }
+        return "{" + lockKey + "}" + FENCE_SUFFIX;
+    }
+
+    /**
+     * 尝试加锁一次
+     *
+     * @param token 不为null时签发 fencing token，加锁成功时写入其中
+     * @return 加锁成功返回null，否则返回锁的剩余毫秒数
+     */
+    private Long tryAcquire(String lockKey, String uuid, long leaseMillis, long[] token) {
+        if (token == null) {
+            Long pttl = redisTemplate.execute(ACQUIRE_LOCK_SCRIPT, Collections.singletonList(lockKey),
+                    uuid, String.valueOf(leaseMillis));
+            if (pttl != null) {
+                heldKeyCache.held(lockKey, pttl);
+            }
+            return pttl;
+        }
+        List<?> result = redisTemplate.execute(ACQUIRE_FENCED_LOCK_SCRIPT, Arrays.asList(lockKey, fenceKeyOf(lockKey)),
+                uuid, String.valueOf(leaseMillis));
+        long value = ((Number) result.get(1)).longValue();
+        if (((Number) result.get(0)).intValue() == 1) {
+            token[0] = value;
+            return null;
+        }
+        heldKeyCache.held(lockKey, value);
+        return value;
+    }
 
     /**
      * 解锁
@@ -165,6 +452,8 @@ public class RedisLockHelper {
 
     /**
      * 延迟解锁
+     * 不在本地排定任务，而是用一次原子的 lua 调用把锁的过期时间设为 delayTime，到期后由 redis 删除，
+     * 本地不保留任何调度状态，节点重启也不影响
      *
      * @param lockKey   key
      * @param uuid      client(最好是唯一键的)
@@ -178,45 +467,299 @@ public class RedisLockHelper {
         if (delayTime <= 0) {
             this.doUnlock(lockKey, uuid);
         } else {
-            EXECUTOR_SERVICE.schedule(() -> this.doUnlock(lockKey, uuid), delayTime, unit);
+            this.doDelayedUnlock(lockKey, uuid, unit.toMillis(delayTime));
         }
     }
 
+    /**
+     * 把该 uuid 持有的锁改为 delayMillis 后过期
+     *
+     * @return 锁仍由 uuid 持有返回true
+     */
+    private boolean doDelayedUnlock(final String lockKey, final String uuid, long delayMillis) {
+        // 先停止续期，否则看门狗会把过期时间续回去
+        leaseWatchdog.cancel(lockKey, uuid);
+        final long start = lockMetrics.start();
+        final Long result;
+        try {
+            result = redisTemplate.execute(DELAYED_RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey),
+                    uuid, String.valueOf(Math.max(1L, delayMillis)), LockReleaseSubscriber.channelOf(lockKey));
+        } finally {
+            // redis 上的锁到期前，本地等待者去 redis 排队等待；redis 异常时同样归还
+            localLocks.release(lockKey, uuid);
+        }
+        lockMetrics.release(LockOperation.REDIS_UNLOCK, lockKey, start);
+        return RELEASE_SUCCESS.equals(result);
+    }
+
     /**
      * 解除该 uuid 对应的客户端加的锁
      *
      * @param lockKey key
      * @param uuid    client(最好是唯一键的)
+     * @return 锁仍由 uuid 持有并释放成功返回true
      */
-    private void doUnlock(final String lockKey, final String uuid) {
-        String val = redisTemplate.opsForValue().get(lockKey);
-        final String[] values = val.split(Pattern.quote(DELIMITER));
-        if (values.length <= 0) {
-            return;
-        }
-        if (uuid.equals(values[1])) {
-            redisTemplate.delete(lockKey);
+    private boolean doUnlock(final String lockKey, final String uuid) {
+        // 先停止续期，再删除锁
+        leaseWatchdog.cancel(lockKey, uuid);
+        final long start = lockMetrics.start();
+        final Long result;
+        try {
+            // 校验持有者并删除锁，同时通知等待该锁的客户端
+            result = redisTemplate.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey),
+                    uuid, LockReleaseSubscriber.channelOf(lockKey));
+            // 真正释放了锁时，本地等待者不必等释放通知绕一圈回来；
+            // 未持有（例如锁已被他人获得）时不能清掉别人的缓存条目
+            if (RELEASE_SUCCESS.equals(result)) {
+                heldKeyCache.invalidate(lockKey);
+            }
+        } finally {
+            // redis 异常时同样归还本地许可
+            localLocks.release(lockKey, uuid);
         }
+        lockMetrics.release(LockOperation.REDIS_UNLOCK, lockKey, start);
+        return RELEASE_SUCCESS.equals(result);
     }
 
     /**
      * 锁延时
      *
-     * @param key
-     * @param value
-     * @param expireTime
-     * @return
+     * @param key        锁key
+     * @param value      锁的持有者
+     * @param expireTime 延时后的过期时间，单位: 秒
+     * @return 锁仍由 value 持有并延时成功返回true
      */
     public Boolean postpone(String key, String value, long expireTime) {
-        return redisTemplate.execute((RedisCallback<Boolean>) redisConnection -> {
-            Jedis jedis = (Jedis) redisConnection.getNativeConnection();
-            Object result = jedis.eval(POSTPONE_LOCK_SCRIPT, Lists.newArrayList(key),
-                    Lists.newArrayList(value, String.valueOf(expireTime)));
-            if (POSTPONE_SUCCESS.equals(result)) {
-                return Boolean.TRUE;
+        return this.renew(key, value, TimeUnit.SECONDS.toMillis(expireTime));
+    }
+
+    /**
+     * 锁延时
+     *
+     * @param key       锁key
+     * @param value     锁的持有者
+     * @param leaseTime 延时后的过期时间
+     * @param unit      时间单位
+     * @return 锁仍由 value 持有并延时成功返回true
+     */
+    public boolean renew(String key, String value, long leaseTime, TimeUnit unit) {
+        return this.renew(key, value, unit.toMillis(leaseTime));
+    }
+
+    /**
+     * 立即解锁
+     *
+     * @param lockKey key
+     * @param uuid    client(最好是唯一键的)
+     * @return 锁仍由 uuid 持有并释放成功返回true
+     */
+    public boolean release(String lockKey, String uuid) {
+        return !StringUtils.isEmpty(lockKey) && this.doUnlock(lockKey, uuid);
+    }
+
+    /**
+     * 为已经通过其他脚本获得的锁登记看门狗续期，解锁仍然调用 unlock()
+     *
+     * @return 登记成功返回true，看门狗登记表已满返回false，此时调用方应放弃这次加锁
+     */
+    boolean watch(String lockKey, String uuid, long leaseMillis) {
+        return leaseWatchdog.watch(lockKey, uuid, leaseMillis, postponeRenewer);
+    }
+
+    /**
+     * 非阻塞获取锁，只尝试一次
+     *
+     * @see #lockReactive(String, String, long, long, TimeUnit)
+     */
+    public CompletableFuture<Boolean> lockAsync(String lockKey, String uuid, long leaseTime, TimeUnit unit) {
+        return this.lockReactive(lockKey, uuid, leaseTime, 0, unit).toFuture();
+    }
+
+    /**
+     * 非阻塞获取锁
+     *
+     * @see #lockReactive(String, String, long, long, TimeUnit)
+     */
+    public CompletableFuture<Boolean> lockAsync(String lockKey, String uuid, long leaseTime, long waitTime, TimeUnit unit) {
+        return this.lockReactive(lockKey, uuid, leaseTime, waitTime, unit).toFuture();
+    }
+
+    /**
+     * lock() 的非阻塞版本
+     * 命令走 lettuce 共享的多路复用连接，等待锁释放期间不占用任何线程，
+     * 收到释放通知或锁的剩余过期时间耗尽后再重试；加锁成功同样向看门狗登记租约，登记表已满时解锁并发出false。
+     * 与 lock() 共用本地拒绝缓存（HeldKeyCache），但不经过本地排队（LocalLockCoalescer 的许可只能阻塞等待），
+     * 同一节点上的并发请求各自访问 redis；也不签发 fencing token
+     *
+     * @param lockKey   lockKey
+     * @param uuid      UUID
+     * @param leaseTime 超时时间
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @return 加锁成功发出true，否则发出false
+     */
+    public Mono<Boolean> lockReactive(String lockKey, String uuid, long leaseTime, long waitTime, TimeUnit unit) {
+        final long leaseMillis = unit.toMillis(leaseTime);
+        final List<String> keys = Collections.singletonList(lockKey);
+        final ReactiveStringRedisTemplate template = this.reactive();
+        return Mono.defer(() -> {
+            final long start = lockMetrics.start();
+            // 只尝试一次时，已知被他人持有的 key 直接在本地判定失败
+            if (waitTime <= 0 && heldKeyCache.isHeld(lockKey)) {
+                lockMetrics.acquire(LockOperation.REDIS_LOCK, lockKey, start, false);
+                return Mono.just(Boolean.FALSE);
             }
-            return Boolean.FALSE;
+            // 脚本返回 nil 时响应式流为空，即加锁成功
+            return releaseSubscriber.acquireReactive(lockKey, waitTime, unit,
+                    () -> template.execute(ACQUIRE_LOCK_SCRIPT, keys, Arrays.asList(uuid, String.valueOf(leaseMillis)))
+                            .next()
+                            .doOnNext(pttl -> heldKeyCache.held(lockKey, pttl))
+                            .defaultIfEmpty(LockReleaseSubscriber.ACQUIRED))
+                    .flatMap(locked -> {
+                        if (locked && !leaseWatchdog.watch(lockKey, uuid, leaseMillis, postponeRenewer)) {
+                            return this.unlockReactive(lockKey, uuid).thenReturn(Boolean.FALSE);
+                        }
+                        return Mono.just(locked);
+                    })
+                    .doOnNext(locked -> lockMetrics.acquire(LockOperation.REDIS_LOCK, lockKey, start, locked));
+        });
+    }
+
+    /**
+     * 非阻塞解锁
+     *
+     * @see #unlockReactive(String, String)
+     */
+    public CompletableFuture<Boolean> unlockAsync(String lockKey, String uuid) {
+        return this.unlockReactive(lockKey, uuid).toFuture();
+    }
+
+    /**
+     * unlock() 的非阻塞版本
+     *
+     * @param lockKey key
+     * @param uuid    client(最好是唯一键的)
+     * @return 锁仍由 uuid 持有并释放成功发出true
+     */
+    public Mono<Boolean> unlockReactive(String lockKey, String uuid) {
+        final ReactiveStringRedisTemplate template = this.reactive();
+        return Mono.defer(() -> {
+            leaseWatchdog.cancel(lockKey, uuid);
+            final long start = lockMetrics.start();
+            return template.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey),
+                    Arrays.asList(uuid, LockReleaseSubscriber.channelOf(lockKey)))
+                    .next()
+                    .map(RELEASE_SUCCESS::equals)
+                    .defaultIfEmpty(Boolean.FALSE)
+                    .doOnNext(released -> {
+                        // 与 doUnlock() 相同，只有真正释放了锁才清掉近端缓存条目
+                        if (released) {
+                            heldKeyCache.invalidate(lockKey);
+                        }
+                        lockMetrics.release(LockOperation.REDIS_UNLOCK, lockKey, start);
+                    });
         });
     }
 
+    /**
+     * 非阻塞锁延时
+     *
+     * @see #renewReactive(String, String, long, TimeUnit)
+     */
+    public CompletableFuture<Boolean> renewAsync(String key, String value, long leaseTime, TimeUnit unit) {
+        return this.renewReactive(key, value, leaseTime, unit).toFuture();
+    }
+
+    /**
+     * postpone() 的非阻塞版本
+     *
+     * @param key       锁key
+     * @param value     锁的持有者
+     * @param leaseTime 延时后的过期时间
+     * @param unit      时间单位
+     * @return 锁仍由 value 持有并延时成功发出true
+     */
+    public Mono<Boolean> renewReactive(String key, String value, long leaseTime, TimeUnit unit) {
+        return this.reactive()
+                .execute(POSTPONE_LOCK_SCRIPT, Collections.singletonList(key),
+                        Arrays.asList(value, String.valueOf(unit.toMillis(leaseTime))))
+                .next()
+                .map(POSTPONE_SUCCESS::equals)
+                .defaultIfEmpty(Boolean.FALSE);
+    }
+
+    private ReactiveStringRedisTemplate reactive() {
+        if (reactiveRedisTemplate == null) {
+            throw new IllegalStateException("异步 API 需要 lettuce 连接（ReactiveRedisConnectionFactory）");
+        }
+        return reactiveRedisTemplate;
+    }
+
+    /**
+     * 锁延时，单位: 毫秒
+     */
+    private boolean renew(String key, String value, long leaseMillis) {
+        Long result = redisTemplate.execute(POSTPONE_LOCK_SCRIPT, Collections.singletonList(key),
+                value, String.valueOf(leaseMillis));
+        return POSTPONE_SUCCESS.equals(result);
+    }
+
+    /**
+     * 一次 lua 调用续期一批锁
+     *
+     * @return 已不属于原持有者的锁
+     */
+    private List<PostponeTask> renewAll(List<PostponeTask> leases) {
+        return renewAll(redisTemplate, leases);
+    }
+
+    /**
+     * 在指定实例上批量续期，集群模式下按 slot 分组
+     *
+     * @param redisTemplate 执行脚本的模板
+     * @param leases   本次到期的租约
+     * @return 已不属于原持有者的锁
+     */
+    static List<PostponeTask> renewAll(StringRedisTemplate redisTemplate, List<PostponeTask> leases) {
+        List<PostponeTask> lost = new ArrayList<>();
+        for (List<PostponeTask> batch : slotBatches(redisTemplate, leases)) {
+            List<String> keys = new ArrayList<>(batch.size());
+            Object[] args = new Object[batch.size() * 2];
+            int i = 0;
+            for (PostponeTask lease : batch) {
+                keys.add(lease.getKey());
+                args[i++] = lease.getValue();
+                args[i++] = String.valueOf(lease.getExpireMillis());
+            }
+            lost.addAll(LeaseRenewer.pick(batch, redisTemplate.execute(BATCH_POSTPONE_LOCK_SCRIPT, keys, args)));
+        }
+        return lost;
+    }
+
+    /**
+     * 批量续期脚本一次操作多个 key，redis cluster 要求同一个脚本的 key 都在同一个 hash slot，否则报 CROSSSLOT；
+     * 集群模式下按租约 key 的 slot 分组，每组一次 lua 调用，单机和哨兵模式整批一次调用
+     *
+     * @param template 执行脚本的模板
+     * @param leases   本次到期的租约
+     * @return 可以各自用一次脚本续期的分组
+     */
+    static Collection<List<PostponeTask>> slotBatches(StringRedisTemplate template, List<PostponeTask> leases) {
+        if (leases.size() < 2 || !isCluster(template.getConnectionFactory())) {
+            return Collections.singletonList(leases);
+        }
+        Map<Integer, List<PostponeTask>> bySlot = new HashMap<>();
+        for (PostponeTask lease : leases) {
+            bySlot.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(lease.getKey()), slot -> new ArrayList<>()).add(lease);
+        }
+        return bySlot.values();
+    }
+
+    private static boolean isCluster(RedisConnectionFactory factory) {
+        if (factory instanceof LettuceConnectionFactory) {
+            return ((LettuceConnectionFactory) factory).isClusterAware();
+        }
+        return factory instanceof JedisConnectionFactory && ((JedisConnectionFactory) factory).isRedisClusterAware();
+    }
+
 }
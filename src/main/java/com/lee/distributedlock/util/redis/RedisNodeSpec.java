@@ -0,0 +1,36 @@
+package com.lee.distributedlock.util.redis;
+
+import io.lettuce.core.RedisURI;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+
+/**
+ * 解析配置中的单个 redis 实例
+ * 支持 host:port，或带密码、库号的 redis://[:password@]host:port[/database]
+ */
+final class RedisNodeSpec {
+
+    private static final String SCHEME = "redis://";
+
+    private RedisNodeSpec() {
+    }
+
+    static RedisStandaloneConfiguration parse(String spec) {
+        String trimmed = spec.trim();
+        RedisURI uri = RedisURI.create(trimmed.startsWith(SCHEME) ? trimmed : SCHEME + trimmed);
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(uri.getHost(), uri.getPort());
+        configuration.setDatabase(uri.getDatabase());
+        if (uri.getPassword() != null && uri.getPassword().length > 0) {
+            configuration.setPassword(RedisPassword.of(uri.getPassword()));
+        }
+        return configuration;
+    }
+
+    /**
+     * 实例名：host:port，库号不为0时追加 /database，不含密码
+     */
+    static String nameOf(RedisStandaloneConfiguration configuration) {
+        String name = configuration.getHostName() + ":" + configuration.getPort();
+        return configuration.getDatabase() == 0 ? name : name + "/" + configuration.getDatabase();
+    }
+}
@@ -0,0 +1,218 @@
+package com.lee.distributedlock.util.redis;
+
+import com.lee.distributedlock.util.redis.task.LeaseRenewer;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import com.lee.distributedlock.util.redis.task.PostponeTask;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 redis 的分布式读写锁
+ * 每个 key 对应一个 hash：
+ * mode    -> read / write
+ * {owner} -> 该持有者租约的到期时间（redis 服务端毫秒时间戳）
+ * <p>
+ * 读锁之间共享，每个读者有自己的租约，读者宕机后只有它自己的租约过期，不影响其他读者；
+ * 写锁独占，只有 hash 中没有任何未过期的持有者时才能获取。
+ * 加锁、解锁、续期都是原子的 lua 脚本，续期与 RedisLockHelper 共用看门狗，释放通知与阻塞等待共用 LockReleaseSubscriber。
+ * <p>
+ * 注意：同一个 key 不能同时用作 RedisLockHelper 的互斥锁（string）和读写锁（hash）
+ */
+@Component
+public class RedisReadWriteLock {
+
+    private static final Long RELEASE_SUCCESS = 1L;
+    private static final Long POSTPONE_SUCCESS = 1L;
+
+    // 取 redis 服务端时间，并清理已过期的持有者，统计剩余持有者个数及最晚到期时间
+    private static final String PRUNE =
+            "redis.replicate_commands() " +
+                    "local t = redis.call('time') " +
+                    "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+                    "local holders = 0 " +
+                    "local maxDeadline = 0 " +
+                    "local fields = redis.call('hgetall', KEYS[1]) " +
+                    "for i = 1, #fields, 2 do " +
+                    "  if fields[i] ~= 'mode' then " +
+                    "    local d = tonumber(fields[i + 1]) " +
+                    "    if d <= now then redis.call('hdel', KEYS[1], fields[i]) " +
+                    "    else holders = holders + 1 if d > maxDeadline then maxDeadline = d end end " +
+                    "  end " +
+                    "end " +
+                    "local mode = redis.call('hget', KEYS[1], 'mode') " +
+                    "if holders == 0 then mode = false end ";
+
+    // 写入当前持有者的租约并把整个 hash 的过期时间设为最晚的租约
+    private static final String GRANT =
+            "local deadline = now + tonumber(ARGV[2]) " +
+                    "redis.call('hset', KEYS[1], ARGV[1], deadline) " +
+                    "if deadline > maxDeadline then maxDeadline = deadline end " +
+                    "redis.call('pexpire', KEYS[1], maxDeadline - now) " +
+                    "return nil";
+
+    // 读锁：没有写者即可获取，失败返回写者租约的剩余毫秒数
+    private static final RedisScript<Long> READ_LOCK_SCRIPT = new DefaultRedisScript<>(
+            PRUNE +
+                    "if mode == 'write' then return maxDeadline - now end " +
+                    "redis.call('hset', KEYS[1], 'mode', 'read') " +
+                    GRANT,
+            Long.class);
+
+    // 写锁：没有任何持有者（或唯一的持有者就是自己的写锁）才能获取，失败返回最晚租约的剩余毫秒数
+    private static final RedisScript<Long> WRITE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            PRUNE +
+                    "if holders > 0 and not (holders == 1 and mode == 'write' and redis.call('hexists', KEYS[1], ARGV[1]) == 1) then " +
+                    "  return maxDeadline - now " +
+                    "end " +
+                    "redis.call('hset', KEYS[1], 'mode', 'write') " +
+                    GRANT,
+            Long.class);
+
+    // 解锁：删除自己的租约，没有持有者时删除整个 hash 并唤醒所有等待者
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            PRUNE +
+                    "if redis.call('hdel', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+                    "holders = holders - 1 " +
+                    "if holders == 0 then " +
+                    "  redis.call('del', KEYS[1]) " +
+                    "  redis.call('publish', ARGV[2], '" + LockReleaseSubscriber.WAKE_ALL + "') " +
+                    "end " +
+                    "return 1",
+            Long.class);
+
+    // 续期：只续自己未过期的租约
+    private static final RedisScript<Long> POSTPONE_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands() " +
+                    "local t = redis.call('time') " +
+                    "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+                    "local d = tonumber(redis.call('hget', KEYS[1], ARGV[1])) " +
+                    "if not d or d <= now then return 0 end " +
+                    "redis.call('hset', KEYS[1], ARGV[1], now + tonumber(ARGV[2])) " +
+                    "if redis.call('pttl', KEYS[1]) < tonumber(ARGV[2]) then redis.call('pexpire', KEYS[1], ARGV[2]) end " +
+                    "return 1",
+            Long.class);
+
+    // 批量续期：ARGV 依次为每把锁的持有者、租约毫秒数，返回续期失败的下标（从1开始）
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> BATCH_POSTPONE_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands() " +
+                    "local t = redis.call('time') " +
+                    "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+                    "local lost = {} " +
+                    "for i = 1, #KEYS do " +
+                    "  local lease = tonumber(ARGV[2 * i]) " +
+                    "  local d = tonumber(redis.call('hget', KEYS[i], ARGV[2 * i - 1])) " +
+                    "  if not d or d <= now then lost[#lost + 1] = i " +
+                    "  else " +
+                    "    redis.call('hset', KEYS[i], ARGV[2 * i - 1], now + lease) " +
+                    "    if redis.call('pttl', KEYS[i]) < lease then redis.call('pexpire', KEYS[i], lease) end " +
+                    "  end " +
+                    "end " +
+                    "return lost",
+            List.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    @Autowired
+    private LeaseWatchdog leaseWatchdog;
+    @Autowired
+    private LockReleaseSubscriber releaseSubscriber;
+
+    // 看门狗回调的续期动作，所有租约共用一个实例，同一批到期的租约合并成一次 lua 调用
+    private final LeaseRenewer postponeRenewer = new LeaseRenewer() {
+        @Override
+        public boolean renew(String key, String owner, long leaseMillis) {
+            return RedisReadWriteLock.this.renew(key, owner, leaseMillis);
+        }
+
+        @Override
+        public List<PostponeTask> renewAll(List<PostponeTask> leases) {
+            return RedisReadWriteLock.this.renewAll(leases);
+        }
+    };
+
+    /**
+     * 获取读锁
+     *
+     * @param lockKey   lockKey
+     * @param owner     锁的持有者（最好是唯一键的）
+     * @param leaseTime 租约时长
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @return true or false
+     */
+    public boolean readLock(String lockKey, String owner, long leaseTime, long waitTime, TimeUnit unit) {
+        return this.lock(READ_LOCK_SCRIPT, lockKey, owner, unit.toMillis(leaseTime), waitTime, unit);
+    }
+
+    /**
+     * 获取写锁
+     *
+     * @param lockKey   lockKey
+     * @param owner     锁的持有者（最好是唯一键的）
+     * @param leaseTime 租约时长
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @return true or false
+     */
+    public boolean writeLock(String lockKey, String owner, long leaseTime, long waitTime, TimeUnit unit) {
+        return this.lock(WRITE_LOCK_SCRIPT, lockKey, owner, unit.toMillis(leaseTime), waitTime, unit);
+    }
+
+    /**
+     * 释放 owner 持有的读锁或写锁
+     *
+     * @param lockKey key
+     * @param owner   锁的持有者
+     * @return 释放成功返回true
+     */
+    public boolean unlock(String lockKey, String owner) {
+        leaseWatchdog.cancel(lockKey, owner);
+        Long result = redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey),
+                owner, LockReleaseSubscriber.channelOf(lockKey));
+        return RELEASE_SUCCESS.equals(result);
+    }
+
+    private boolean lock(RedisScript<Long> script, String lockKey, String owner, long leaseMillis,
+                         long waitTime, TimeUnit unit) {
+        boolean locked = releaseSubscriber.acquire(lockKey, waitTime, unit,
+                () -> redisTemplate.execute(script, Collections.singletonList(lockKey), owner, String.valueOf(leaseMillis)));
+        if (locked && !leaseWatchdog.watch(lockKey, owner, leaseMillis, postponeRenewer)) {
+            // 看门狗登记表已满，锁不会续期，放弃这次加锁
+            this.unlock(lockKey, owner);
+            return false;
+        }
+        return locked;
+    }
+
+    private boolean renew(String lockKey, String owner, long leaseMillis) {
+        Long result = redisTemplate.execute(POSTPONE_SCRIPT, Collections.singletonList(lockKey),
+                owner, String.valueOf(leaseMillis));
+        return POSTPONE_SUCCESS.equals(result);
+    }
+
+    private List<PostponeTask> renewAll(List<PostponeTask> leases) {
+        List<PostponeTask> lost = new ArrayList<>();
+        // 集群模式下按 slot 分组，避免 CROSSSLOT
+        for (List<PostponeTask> batch : RedisLockHelper.slotBatches(redisTemplate, leases)) {
+            List<String> keys = new ArrayList<>(batch.size());
+            Object[] args = new Object[batch.size() * 2];
+            int i = 0;
+            for (PostponeTask lease : batch) {
+                keys.add(lease.getKey());
+                args[i++] = lease.getValue();
+                args[i++] = String.valueOf(lease.getExpireMillis());
+            }
+            lost.addAll(LeaseRenewer.pick(batch, redisTemplate.execute(BATCH_POSTPONE_SCRIPT, keys, args)));
+        }
+        return lost;
+    }
+}
@@ -0,0 +1,400 @@
+package com.lee.distributedlock.util.redis;
+
+import com.lee.distributedlock.util.redis.task.LeaseRenewer;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import com.lee.distributedlock.util.redis.task.PostponeTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Redlock 算法：在 N 个相互独立的 redis 实例上加锁
+ * 1. 记录开始时间，并行向所有实例发送加锁脚本，每个实例的等待时间不超过 nodeTimeout；
+ * 2. 只要有 N/2+1 个实例加锁成功就立即返回，不必等待其余实例，因此加锁耗时接近多数派中最慢的那个实例；
+ * 3. 锁的有效时间 = 租约时长 - 加锁耗时 - 时钟漂移（租约的1% + 2ms），有效时间小于等于0视为失败；
+ * 4. 加锁失败时并行向所有实例释放，避免残留的部分锁。
+ * <p>
+ * 与 RedisLockHelper 使用同一套加锁/解锁脚本，单个实例上的锁与普通锁完全一样
+ * <p>
+ * 续期：传入看门狗时，加锁成功后登记租约，到期前在所有实例上续期，多数派续期成功才算成功；
+ * 同一批到期的租约在每个实例上只执行一次批量续期脚本，各实例并行，一批的耗时约为一次 nodeTimeout 以内的往返；
+ * 有效时间撑不到第一次续期完成（租约时长的2/3 + 一个 tick + nodeTimeout）的加锁视为失败，
+ * 因此租约时长应明显大于 nodeTimeout 与看门狗 tick。不传看门狗时不续期，调用方必须在返回的有效时间内完成
+ * <p>
+ * 迟到的命令：请求在共享线程池里排队，每次调用的命令只在该次调用的截止时间（开始时间 + nodeTimeout）之前发出，
+ * 超时后不再发送；已经发出、在判定失败或解锁之后才返回成功的加锁命令，立即在该实例上释放，不会留下残留的锁
+ * <p>
+ * 连接在构造时预先建立：第一次建连的耗时远大于 nodeTimeout，留到第一次加锁时建连会让它因有效时间不足而失败
+ */
+@Slf4j
+public class RedisRedlock implements DisposableBean {
+
+    private static final Long POSTPONE_SUCCESS = 1L;
+    // 时钟漂移系数
+    private static final double CLOCK_DRIFT_FACTOR = 0.01;
+    private static final long CLOCK_DRIFT_MIN_MILLIS = 2;
+    // 加锁失败后重试前的随机等待区间，避免多个客户端同时重试再次瓜分实例
+    private static final int RETRY_DELAY_MIN_MILLIS = 10;
+    private static final int RETRY_DELAY_MAX_MILLIS = 50;
+    // 构造时预先建连的最长等待时间，连不上的实例在第一次使用时再建连
+    private static final long WARM_UP_TIMEOUT_MILLIS = 5000;
+    // 预热时空跑续期脚本用的 key，不存在，脚本不会写入任何数据
+    private static final String WARM_UP_KEY = "redlock:warm-up";
+
+    private final List<StringRedisTemplate> nodes;
+    private final int quorum;
+    private final long nodeTimeoutMillis;
+    private final ExecutorService executor;
+    private final LeaseWatchdog leaseWatchdog;
+    // 加锁命令尚未全部返回的调用：key + owner -> 本次调用，unlock() 时标记为已释放
+    private final ConcurrentMap<String, Attempt> attempts = new ConcurrentHashMap<>();
+
+    // 看门狗回调的续期动作，同一批到期的租约在每个实例上合并成一次 lua 调用
+    private final LeaseRenewer renewer = new LeaseRenewer() {
+        @Override
+        public boolean renew(String key, String owner, long leaseMillis) {
+            return RedisRedlock.this.renew(key, owner, leaseMillis);
+        }
+
+        @Override
+        public List<PostponeTask> renewAll(List<PostponeTask> leases) {
+            return RedisRedlock.this.renewAll(leases);
+        }
+    };
+
+    /**
+     * 不续期
+     *
+     * @param connectionFactories 相互独立的 redis 实例
+     * @param nodeTimeoutMillis   单个实例的最长等待时间，应远小于锁的租约时长
+     */
+    public RedisRedlock(List<? extends RedisConnectionFactory> connectionFactories, long nodeTimeoutMillis) {
+        this(connectionFactories, nodeTimeoutMillis, null);
+    }
+
+    /**
+     * @param connectionFactories 相互独立的 redis 实例
+     * @param nodeTimeoutMillis   单个实例的最长等待时间，应远小于锁的租约时长
+     * @param leaseWatchdog       续期用的看门狗，为null时不续期
+     */
+    public RedisRedlock(List<? extends RedisConnectionFactory> connectionFactories, long nodeTimeoutMillis,
+                        LeaseWatchdog leaseWatchdog) {
+        if (connectionFactories.isEmpty()) {
+            throw new IllegalArgumentException("redlock 至少需要一个 redis 实例");
+        }
+        List<StringRedisTemplate> templates = new ArrayList<>(connectionFactories.size());
+        for (RedisConnectionFactory factory : connectionFactories) {
+            templates.add(new StringRedisTemplate(factory));
+        }
+        this.nodes = Collections.unmodifiableList(templates);
+        this.quorum = templates.size() / 2 + 1;
+        this.nodeTimeoutMillis = nodeTimeoutMillis;
+        this.leaseWatchdog = leaseWatchdog;
+        // 线程数不少于实例数的两倍，保证同一次加锁/解锁的请求能并行发往所有实例
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(templates.size() * 2, Runtime.getRuntime().availableProcessors() * 2),
+                new DefaultThreadFactory("redlock", true));
+        this.warmUp();
+    }
+
+    /**
+     * 加锁，失败后随机等待一小段时间重试，直到 waitTime 耗尽
+     *
+     * @param lockKey   lockKey
+     * @param owner     锁的持有者（最好是唯一键的）
+     * @param leaseTime 租约时长
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @return 锁的剩余有效时间，单位: 毫秒；加锁失败返回0
+     */
+    public long lock(String lockKey, String owner, long leaseTime, long waitTime, TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        while (true) {
+            long validity = this.tryLock(lockKey, owner, leaseTime, unit);
+            if (validity > 0) {
+                return validity;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return 0;
+            }
+            try {
+                Thread.sleep(Math.min(remaining,
+                        ThreadLocalRandom.current().nextInt(RETRY_DELAY_MIN_MILLIS, RETRY_DELAY_MAX_MILLIS)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 尝试加锁一次
+     *
+     * @return 锁的剩余有效时间，单位: 毫秒；加锁失败返回0
+     */
+    public long tryLock(String lockKey, String owner, long leaseTime, TimeUnit unit) {
+        final long leaseMillis = unit.toMillis(leaseTime);
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(nodeTimeoutMillis);
+        final AtomicInteger acquired = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch decided = new CountDownLatch(1);
+        final List<String> keys = Collections.singletonList(lockKey);
+        final String lease = String.valueOf(leaseMillis);
+        final String attemptId = attemptIdOf(lockKey, owner);
+        final Attempt attempt = new Attempt(nodes.size());
+        attempts.put(attemptId, attempt);
+        for (StringRedisTemplate node : nodes) {
+            CompletableFuture.supplyAsync(() -> System.nanoTime() - deadline < 0
+                    && node.execute(RedisLockHelper.ACQUIRE_LOCK_SCRIPT, keys, owner, lease) == null, executor)
+                    .whenComplete((success, e) -> {
+                        boolean locked = e == null && success;
+                        if (locked && attempt.released) {
+                            // 判定失败或已解锁之后才返回的加锁命令，在该实例上补一次释放
+                            release(node, lockKey, owner);
+                        }
+                        if (attempt.pending.decrementAndGet() == 0) {
+                            attempts.remove(attemptId, attempt);
+                        }
+                        if (locked) {
+                            if (acquired.incrementAndGet() >= quorum) {
+                                decided.countDown();
+                            }
+                        } else if (failed.incrementAndGet() > nodes.size() - quorum) {
+                            // 多数派已不可能达成
+                            decided.countDown();
+                        }
+                    });
+        }
+        try {
+            decided.await(nodeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long drift = (long) (leaseMillis * CLOCK_DRIFT_FACTOR) + CLOCK_DRIFT_MIN_MILLIS;
+        long validity = leaseMillis - elapsed - drift;
+        if (acquired.get() >= quorum && validity > this.renewalWindowMillis(leaseMillis)) {
+            if (leaseWatchdog == null || leaseWatchdog.watch(lockKey, owner, leaseMillis, renewer)) {
+                return validity;
+            }
+        }
+        log.debug("redlock 加锁失败, key: {}, 成功实例数: {}/{}, 有效时间: {}ms",
+                lockKey, acquired.get(), nodes.size(), validity);
+        this.unlock(lockKey, owner);
+        return 0;
+    }
+
+    /**
+     * 并行向所有实例释放锁，最多等待 nodeTimeout
+     *
+     * @param lockKey key
+     * @param owner   锁的持有者
+     */
+    public void unlock(String lockKey, String owner) {
+        if (leaseWatchdog != null) {
+            leaseWatchdog.cancel(lockKey, owner);
+        }
+        Attempt attempt = attempts.get(attemptIdOf(lockKey, owner));
+        if (attempt != null) {
+            // 先标记再释放：之后才返回成功的加锁命令由 tryLock() 的回调补释放
+            attempt.released = true;
+        }
+        try {
+            this.fanOut(node -> release(node, lockKey, owner)).get(nodeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // 个别实例超时或不可用，锁会在租约到期后自动释放
+            log.warn("redlock 释放锁未全部完成, key: {}", lockKey, e);
+        }
+    }
+
+    /**
+     * 在所有实例上续期，最多等待 nodeTimeout
+     *
+     * @param lockKey     key
+     * @param owner       锁的持有者
+     * @param leaseMillis 续期后的租约时长，单位: 毫秒
+     * @return 多数派实例续期成功返回true
+     */
+    public boolean renew(String lockKey, String owner, long leaseMillis) {
+        final List<String> keys = Collections.singletonList(lockKey);
+        final String lease = String.valueOf(leaseMillis);
+        final AtomicInteger renewed = new AtomicInteger();
+        final CountDownLatch decided = new CountDownLatch(1);
+        final AtomicInteger failed = new AtomicInteger();
+        for (StringRedisTemplate node : nodes) {
+            CompletableFuture.supplyAsync(() -> POSTPONE_SUCCESS.equals(
+                    node.execute(RedisLockHelper.POSTPONE_LOCK_SCRIPT, keys, owner, lease)), executor)
+                    .whenComplete((success, e) -> {
+                        if (e == null && success) {
+                            if (renewed.incrementAndGet() >= quorum) {
+                                decided.countDown();
+                            }
+                        } else if (failed.incrementAndGet() > nodes.size() - quorum) {
+                            decided.countDown();
+                        }
+                    });
+        }
+        try {
+            decided.await(nodeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return renewed.get() >= quorum;
+    }
+
+    /**
+     * 批量续期：每个实例一次批量续期脚本，各实例并行执行，最多等待 nodeTimeout；
+     * 多数派实例续期成功的租约才算续期成功
+     *
+     * @param leases 本次到期的租约
+     * @return 续期失败的租约
+     * @throws IllegalStateException 按时返回结果的实例不足多数派，无法判断租约是否丢失，由看门狗在下一个 tick 重试
+     */
+    List<PostponeTask> renewAll(List<PostponeTask> leases) {
+        List<CompletableFuture<Set<PostponeTask>>> futures = new ArrayList<>(nodes.size());
+        for (StringRedisTemplate node : nodes) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                Set<PostponeTask> lost = Collections.newSetFromMap(new IdentityHashMap<>());
+                lost.addAll(RedisLockHelper.renewAll(node, leases));
+                return lost;
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .get(nodeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // 个别实例失败或超时，按该实例未续期处理
+        }
+        int answered = 0;
+        int[] renewed = new int[leases.size()];
+        for (CompletableFuture<Set<PostponeTask>> future : futures) {
+            if (!future.isDone() || future.isCompletedExceptionally()) {
+                continue;
+            }
+            answered++;
+            Set<PostponeTask> lost = future.join();
+            for (int i = 0; i < leases.size(); i++) {
+                if (!lost.contains(leases.get(i))) {
+                    renewed[i]++;
+                }
+            }
+        }
+        if (answered < quorum) {
+            throw new IllegalStateException("redlock 续期按时返回的实例数不足多数派: " + answered + "/" + nodes.size());
+        }
+        List<PostponeTask> lost = new ArrayList<>();
+        for (int i = 0; i < leases.size(); i++) {
+            if (renewed[i] < quorum) {
+                lost.add(leases.get(i));
+            }
+        }
+        return lost;
+    }
+
+    public int getQuorum() {
+        return quorum;
+    }
+
+    /**
+     * 有效时间至少要撑到第一次续期完成；不续期时只要求大于0
+     */
+    private long renewalWindowMillis(long leaseMillis) {
+        if (leaseWatchdog == null) {
+            return 0;
+        }
+        return leaseMillis * 2 / 3 + leaseWatchdog.getTickMillis() + nodeTimeoutMillis;
+    }
+
+    /**
+     * 并行在所有实例上建立连接、预先加载加锁/解锁/续期脚本，并空跑一次续期脚本，
+     * 第一次加锁不再承担建连、NOSCRIPT 重试和客户端首次执行脚本的开销
+     */
+    private void warmUp() {
+        final List<RedisScript<?>> scripts = Arrays.asList(RedisLockHelper.ACQUIRE_LOCK_SCRIPT,
+                RedisLockHelper.RELEASE_LOCK_SCRIPT, RedisLockHelper.POSTPONE_LOCK_SCRIPT,
+                RedisLockHelper.BATCH_POSTPONE_LOCK_SCRIPT);
+        try {
+            this.fanOut(node -> {
+                node.execute((RedisCallback<Void>) connection -> {
+                    for (RedisScript<?> script : scripts) {
+                        connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                    }
+                    return null;
+                });
+                return node.execute(RedisLockHelper.POSTPONE_LOCK_SCRIPT,
+                        Collections.singletonList(WARM_UP_KEY), WARM_UP_KEY, "1");
+            }).get(WARM_UP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("redlock 部分实例预先建连失败，将在第一次使用时重试", e);
+        }
+    }
+
+    private CompletableFuture<Void> fanOut(Function<StringRedisTemplate, ?> command) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            StringRedisTemplate node = nodes.get(i);
+            futures[i] = CompletableFuture.supplyAsync(() -> command.apply(node), executor);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    private static Long release(StringRedisTemplate node, String lockKey, String owner) {
+        return node.execute(RedisLockHelper.RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey),
+                owner, LockReleaseSubscriber.channelOf(lockKey));
+    }
+
+    private static String attemptIdOf(String lockKey, String owner) {
+        return lockKey + '|' + owner;
+    }
+
+    /**
+     * 一次 tryLock() 调用
+     */
+    private static final class Attempt {
+        // 尚未返回的加锁命令数
+        private final AtomicInteger pending;
+        // 已判定失败或已解锁
+        private volatile boolean released;
+
+        private Attempt(int nodes) {
+            this.pending = new AtomicInteger(nodes);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
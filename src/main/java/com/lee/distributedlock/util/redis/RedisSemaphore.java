@@ -0,0 +1,222 @@
+package com.lee.distributedlock.util.redis;
+
+import com.lee.distributedlock.util.redis.task.LeaseRenewer;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import com.lee.distributedlock.util.redis.task.PostponeTask;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 redis 的分布式信号量（许可池）
+ * 每个 key 对应两个结构：
+ * {key}          zset，member 为持有者，score 为该持有者租约的到期时间（redis 服务端毫秒时间戳）
+ * {key}:permits  hash，持有者 -> 持有的许可数
+ * 花括号是 hash tag，两个结构总在同一个 slot，redis cluster 下同一个脚本操作它们不会 CROSSSLOT；
+ * key 本身已含 {hash tag} 时不再加花括号，直接使用 key 与 key:permits
+ * <p>
+ * 持有者宕机后它的租约到期，下一次 acquire 时连同它持有的许可一起清理；
+ * acquire(n)/release(n) 都是一次 lua 调用，续期与 RedisLockHelper 共用看门狗，阻塞等待与其共用 LockReleaseSubscriber
+ */
+@Component
+public class RedisSemaphore {
+
+    private static final Long POSTPONE_SUCCESS = 1L;
+
+    private static final String PERMITS_SUFFIX = ":permits";
+
+    // 清理过期持有者后，剩余许可足够则一次性获取 n 个，否则返回最早到期的租约剩余毫秒数
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands() " +
+                    "local t = redis.call('time') " +
+                    "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+                    "local expired = redis.call('zrangebyscore', KEYS[1], '-inf', now) " +
+                    "for _, o in ipairs(expired) do redis.call('hdel', KEYS[2], o) end " +
+                    "redis.call('zremrangebyscore', KEYS[1], '-inf', now) " +
+                    "local used = 0 " +
+                    "for _, c in ipairs(redis.call('hvals', KEYS[2])) do used = used + tonumber(c) end " +
+                    "if used + tonumber(ARGV[2]) > tonumber(ARGV[3]) then " +
+                    "  local first = redis.call('zrange', KEYS[1], 0, 0, 'withscores') " +
+                    "  if first[2] then return tonumber(first[2]) - now end " +
+                    "  return -1 " +
+                    "end " +
+                    "redis.call('hincrby', KEYS[2], ARGV[1], ARGV[2]) " +
+                    "redis.call('zadd', KEYS[1], now + tonumber(ARGV[4]), ARGV[1]) " +
+                    "local last = redis.call('zrange', KEYS[1], -1, -1, 'withscores') " +
+                    "local ttl = tonumber(last[2]) - now " +
+                    "redis.call('pexpire', KEYS[1], ttl) " +
+                    "redis.call('pexpire', KEYS[2], ttl) " +
+                    "return nil",
+            Long.class);
+
+    // 归还 n 个许可，返回该持有者剩余的许可数，未持有返回 -1
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "local c = tonumber(redis.call('hget', KEYS[2], ARGV[1])) " +
+                    "if not c then return -1 end " +
+                    "c = c - tonumber(ARGV[2]) " +
+                    "if c <= 0 then " +
+                    "  c = 0 " +
+                    "  redis.call('hdel', KEYS[2], ARGV[1]) " +
+                    "  redis.call('zrem', KEYS[1], ARGV[1]) " +
+                    "else " +
+                    "  redis.call('hset', KEYS[2], ARGV[1], c) " +
+                    "end " +
+                    "redis.call('publish', ARGV[3], ARGV[2] == '1' and ARGV[1] or '" + LockReleaseSubscriber.WAKE_ALL + "') " +
+                    "return c",
+            Long.class);
+
+    // 续期：只续自己未过期的租约
+    private static final RedisScript<Long> POSTPONE_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands() " +
+                    "local t = redis.call('time') " +
+                    "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+                    "local d = tonumber(redis.call('zscore', KEYS[1], ARGV[1])) " +
+                    "if not d or d <= now then return 0 end " +
+                    "redis.call('zadd', KEYS[1], 'XX', now + tonumber(ARGV[2]), ARGV[1]) " +
+                    "if redis.call('pttl', KEYS[1]) < tonumber(ARGV[2]) then " +
+                    "  redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "  redis.call('pexpire', KEYS[2], ARGV[2]) " +
+                    "end " +
+                    "return 1",
+            Long.class);
+
+    // 批量续期：KEYS 依次为每个信号量的 zset、hash，ARGV 依次为持有者、租约毫秒数，返回续期失败的下标（从1开始）
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> BATCH_POSTPONE_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands() " +
+                    "local t = redis.call('time') " +
+                    "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+                    "local lost = {} " +
+                    "for i = 1, #ARGV / 2 do " +
+                    "  local zset, hash, owner, lease = KEYS[2 * i - 1], KEYS[2 * i], ARGV[2 * i - 1], tonumber(ARGV[2 * i]) " +
+                    "  local d = tonumber(redis.call('zscore', zset, owner)) " +
+                    "  if not d or d <= now then lost[#lost + 1] = i " +
+                    "  else " +
+                    "    redis.call('zadd', zset, 'XX', now + lease, owner) " +
+                    "    if redis.call('pttl', zset) < lease then " +
+                    "      redis.call('pexpire', zset, lease) " +
+                    "      redis.call('pexpire', hash, lease) " +
+                    "    end " +
+                    "  end " +
+                    "end " +
+                    "return lost",
+            List.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    @Autowired
+    private LeaseWatchdog leaseWatchdog;
+    @Autowired
+    private LockReleaseSubscriber releaseSubscriber;
+
+    // 看门狗回调的续期动作，所有租约共用一个实例，同一批到期的租约合并成一次 lua 调用
+    private final LeaseRenewer postponeRenewer = new LeaseRenewer() {
+        @Override
+        public boolean renew(String key, String owner, long leaseMillis) {
+            return RedisSemaphore.this.renew(key, owner, leaseMillis);
+        }
+
+        @Override
+        public List<PostponeTask> renewAll(List<PostponeTask> leases) {
+            return RedisSemaphore.this.renewAll(leases);
+        }
+    };
+
+    /**
+     * 尝试获取 n 个许可，只尝试一次
+     *
+     * @see #acquire(String, String, int, int, long, long, TimeUnit)
+     */
+    public boolean tryAcquire(String key, String owner, int permits, int n, long leaseTime, TimeUnit unit) {
+        return this.acquire(key, owner, permits, n, leaseTime, 0, unit);
+    }
+
+    /**
+     * 获取 n 个许可，许可不足时阻塞等待其他持有者归还
+     *
+     * @param key       信号量key
+     * @param owner     持有者（最好是唯一键的）
+     * @param permits   该信号量的许可总数
+     * @param n         本次获取的许可数
+     * @param leaseTime 租约时长，持有者宕机后许可在租约到期时自动归还
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @return true or false
+     */
+    public boolean acquire(String key, String owner, int permits, int n, long leaseTime, long waitTime, TimeUnit unit) {
+        if (n <= 0 || n > permits) {
+            throw new IllegalArgumentException("非法的许可数: " + n + "/" + permits);
+        }
+        final long leaseMillis = unit.toMillis(leaseTime);
+        final List<String> keys = keys(key);
+        boolean acquired = releaseSubscriber.acquire(key, waitTime, unit,
+                () -> redisTemplate.execute(ACQUIRE_SCRIPT, keys, owner, String.valueOf(n),
+                        String.valueOf(permits), String.valueOf(leaseMillis)));
+        if (acquired && !leaseWatchdog.watch(key, owner, leaseMillis, postponeRenewer)) {
+            // 看门狗登记表已满，许可不会续期，归还本次获取的许可
+            this.release(key, owner, n);
+            return false;
+        }
+        return acquired;
+    }
+
+    /**
+     * 归还 n 个许可，全部归还后停止续期
+     *
+     * @param key   信号量key
+     * @param owner 持有者
+     * @param n     归还的许可数
+     * @return 该持有者确实持有许可返回true
+     */
+    public boolean release(String key, String owner, int n) {
+        Long remaining = redisTemplate.execute(RELEASE_SCRIPT, keys(key), owner, String.valueOf(n),
+                LockReleaseSubscriber.channelOf(key));
+        if (remaining == null || remaining <= 0) {
+            leaseWatchdog.cancel(key, owner);
+        }
+        return remaining != null && remaining >= 0;
+    }
+
+    private boolean renew(String key, String owner, long leaseMillis) {
+        Long result = redisTemplate.execute(POSTPONE_SCRIPT, keys(key), owner, String.valueOf(leaseMillis));
+        return POSTPONE_SUCCESS.equals(result);
+    }
+
+    private List<PostponeTask> renewAll(List<PostponeTask> leases) {
+        List<PostponeTask> lost = new ArrayList<>();
+        // 集群模式下按 slot 分组，避免 CROSSSLOT
+        for (List<PostponeTask> batch : RedisLockHelper.slotBatches(redisTemplate, leases)) {
+            List<String> keys = new ArrayList<>(batch.size() * 2);
+            Object[] args = new Object[batch.size() * 2];
+            int i = 0;
+            for (PostponeTask lease : batch) {
+                String zset = zsetKeyOf(lease.getKey());
+                keys.add(zset);
+                keys.add(zset + PERMITS_SUFFIX);
+                args[i++] = lease.getValue();
+                args[i++] = String.valueOf(lease.getExpireMillis());
+            }
+            lost.addAll(LeaseRenewer.pick(batch, redisTemplate.execute(BATCH_POSTPONE_SCRIPT, keys, args)));
+        }
+        return lost;
+    }
+
+    private static List<String> keys(String key) {
+        String zset = zsetKeyOf(key);
+        return Arrays.asList(zset, zset + PERMITS_SUFFIX);
+    }
+
+    /**
+     * 没有 hash tag 的 key 整个作为 hash tag，与 key 本身在同一个 slot（按 slot 分组续期时仍按原 key 分组）
+     */
+    private static String zsetKeyOf(String key) {
+        return ConsistentHashRing.hashTagOf(key).equals(key) ? "{" + key + "}" : key;
+    }
+}
@@ -0,0 +1,183 @@
+package com.lee.distributedlock.util.redis;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 合并同一个 key 的并发重复调用，只执行一次，其余调用共享结果
+ * <p>
+ * 本 JVM 内：第一个调用登记一个 CompletableFuture，之后的调用直接等待这个 future；
+ * 跨节点：本地的第一个调用再去竞争 redis 锁，获得锁的节点执行业务逻辑，把结果序列化为 JSON，
+ * 连同自己的持有者标识以较短的过期时间写入 "{key}:result"，然后解锁；其他节点等待锁的释放通知，读到结果后直接返回。
+ * 执行者抛出异常时不写结果，其他节点被唤醒后由其中一个重新执行
+ * <p>
+ * 只有加锁时发现锁被占用、等待过的调用才共享结果，而且只接受它等待过的那个持有者写入的结果；
+ * 之后到达的非并发调用总是自己执行，不会读到上一次执行残留的旧结果。
+ * 结果的过期时间 distributed-lock.single-flight.result-ttl-millis（默认3000）只需覆盖等待者被唤醒后读取结果的时间。
+ * 结果无法反序列化时视为没有结果，由本次调用自己执行
+ */
+@Slf4j
+@Component
+public class RedisSingleFlight {
+
+    private static final String RESULT_SUFFIX = ":result";
+    // 结果的格式：持有者标识 + 分隔符 + JSON
+    private static final char OWNER_SEPARATOR = '\n';
+
+    private static final long ACQUIRED = 1L;
+    private static final long SHARED = 2L;
+
+    // ARGV[3] 为等待过的持有者（没有等待过时为空串）：有该持有者写入的结果时返回 {2, 结果}；
+    // 否则尝试加锁，成功返回 {1}，失败返回 {0, 锁的剩余毫秒数, 当前持有者}
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> LEAD_SCRIPT = new DefaultRedisScript<>(
+            "if ARGV[3] ~= '' then " +
+                    "  local r = redis.call('get', KEYS[2]) " +
+                    "  local prefix = ARGV[3] .. '\\n' " +
+                    "  if r and string.sub(r, 1, #prefix) == prefix then return {2, string.sub(r, #prefix + 1)} end " +
+                    "end " +
+                    "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return {1} end " +
+                    "return {0, redis.call('pttl', KEYS[1]), redis.call('get', KEYS[1])}",
+            List.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    @Autowired
+    private RedisLockHelper redisLockHelper;
+    @Autowired
+    private LockReleaseSubscriber releaseSubscriber;
+
+    private final ObjectMapper objectMapper;
+    private final long resultTtlMillis;
+
+    // 本 JVM 内正在执行的调用：key -> 结果
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public RedisSingleFlight(ObjectProvider<ObjectMapper> objectMapper,
+                             @Value("${distributed-lock.single-flight.result-ttl-millis:3000}") long resultTtlMillis) {
+        this.objectMapper = objectMapper.getIfAvailable(ObjectMapper::new);
+        this.resultTtlMillis = resultTtlMillis;
+    }
+
+    /**
+     * 执行或等待同一个 key 正在进行的调用
+     *
+     * @param lockKey    锁key
+     * @param resultType 业务方法的返回值类型，用于反序列化其他节点的结果
+     * @param leaseTime  执行者持有锁的租约时长
+     * @param waitTime   最长等待时间
+     * @param unit       时间单位
+     * @param body       业务逻辑
+     * @return 本次执行或共享到的结果
+     * @throws TimeoutException 等待超时
+     */
+    public Object execute(String lockKey, Type resultType, long leaseTime, long waitTime, TimeUnit unit,
+                          Callable<Object> body) throws Exception {
+        CompletableFuture<Object> ours = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(lockKey, ours);
+        if (leader != null) {
+            try {
+                return leader.get(waitTime, unit);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        try {
+            Object result = this.executeOnce(lockKey, resultType, leaseTime, waitTime, unit, body);
+            ours.complete(result);
+            return result;
+        } catch (Exception e) {
+            ours.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(lockKey, ours);
+        }
+    }
+
+    private Object executeOnce(String lockKey, Type resultType, long leaseTime, long waitTime, TimeUnit unit,
+                               Callable<Object> body) throws Exception {
+        final String uuid = LockOwners.next();
+        final String resultKey = lockKey + RESULT_SUFFIX;
+        final long leaseMillis = unit.toMillis(leaseTime);
+        final List<String> keys = Arrays.asList(lockKey, resultKey);
+        final Object[] shared = new Object[1];
+        // 最近一次看到的锁持有者，只接受它写入的结果
+        final String[] waitedFor = {""};
+        boolean done = releaseSubscriber.acquire(lockKey, waitTime, unit, () -> {
+            List<?> reply = redisTemplate.execute(LEAD_SCRIPT, keys, uuid, String.valueOf(leaseMillis), waitedFor[0]);
+            long status = ((Number) reply.get(0)).longValue();
+            if (status == SHARED) {
+                shared[0] = reply.get(1);
+                return null;
+            }
+            if (status == ACQUIRED) {
+                return null;
+            }
+            if (reply.size() > 2 && reply.get(2) != null) {
+                waitedFor[0] = (String) reply.get(2);
+            }
+            return ((Number) reply.get(1)).longValue();
+        });
+        if (!done) {
+            throw new TimeoutException("等待执行结果超时: " + lockKey);
+        }
+        if (shared[0] != null) {
+            try {
+                return this.read((String) shared[0], resultType);
+            } catch (IOException e) {
+                // 结果读不出来（例如返回值类型已变更）时视为没有结果，自己执行
+                log.warn("共享结果无法反序列化，由本次调用执行, key: {}", resultKey, e);
+                return body.call();
+            }
+        }
+        // 获得了锁，由本节点执行
+        if (!redisLockHelper.watch(lockKey, uuid, leaseMillis)) {
+            // 看门狗登记表已满，锁不会续期，不能保证只执行一次
+            redisLockHelper.unlock(lockKey, uuid);
+            throw new IllegalStateException("看门狗登记的租约数已达上限: " + lockKey);
+        }
+        try {
+            Object result = body.call();
+            this.write(resultKey, uuid, result);
+            return result;
+        } finally {
+            redisLockHelper.unlock(lockKey, uuid);
+        }
+    }
+
+    private Object read(String json, Type resultType) throws IOException {
+        JavaType type = objectMapper.getTypeFactory().constructType(resultType);
+        return objectMapper.readValue(json, type);
+    }
+
+    private void write(String resultKey, String owner, Object result) {
+        try {
+            redisTemplate.opsForValue().set(resultKey, owner + OWNER_SEPARATOR + objectMapper.writeValueAsString(result),
+                    resultTtlMillis, TimeUnit.MILLISECONDS);
+        } catch (JsonProcessingException e) {
+            // 结果无法序列化时其他节点只能自己执行
+            log.warn("结果无法序列化，不共享给其他节点, key: {}", resultKey, e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.lee.distributedlock.util.redis;
+
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Redlock 配置，配置了 distributed-lock.redlock.nodes 才生效
+ * <p>
+ * distributed-lock.redlock.nodes=127.0.0.1:6379,127.0.0.1:6380,redis://:password@127.0.0.1:6381/1
+ * distributed-lock.redlock.node-timeout-millis=50
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "distributed-lock.redlock", name = "nodes")
+public class RedlockConfiguration implements DisposableBean {
+
+    private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+    @Bean(destroyMethod = "destroy")
+    public RedisRedlock redisRedlock(@Value("${distributed-lock.redlock.nodes}") String nodes,
+                                     @Value("${distributed-lock.redlock.node-timeout-millis:50}") long nodeTimeoutMillis,
+                                     LeaseWatchdog leaseWatchdog) {
+        // 单个实例的命令超时即 redlock 的单实例等待时间
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .commandTimeout(Duration.ofMillis(nodeTimeoutMillis))
+                .build();
+        for (String node : StringUtils.commaDelimitedListToStringArray(nodes)) {
+            RedisStandaloneConfiguration standalone = RedisNodeSpec.parse(node);
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(standalone, clientConfiguration);
+            factory.afterPropertiesSet();
+            connectionFactories.add(factory);
+        }
+        return new RedisRedlock(connectionFactories, nodeTimeoutMillis, leaseWatchdog);
+    }
+
+    @Override
+    public void destroy() {
+        for (LettuceConnectionFactory factory : connectionFactories) {
+            factory.destroy();
+        }
+    }
+}
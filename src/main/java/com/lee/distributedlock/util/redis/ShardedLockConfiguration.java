@@ -0,0 +1,53 @@
+package com.lee.distributedlock.util.redis;
+
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 锁分片配置，配置了 distributed-lock.shards.nodes 才生效
+ * <p>
+ * distributed-lock.shards.nodes=127.0.0.1:6379,127.0.0.1:6380,redis://:password@127.0.0.1:6381/1
+ * distributed-lock.shards.virtual-nodes=160
+ * <p>
+ * 环在启动时固定，运行中不会增删实例。修改 nodes 或 virtual-nodes 会改变部分 key 所属的实例，
+ * 新旧配置的客户端同时运行时同一个 key 会在两个实例上各加一把锁，互斥失效；
+ * 因此修改节点集合时必须先停掉所有使用分片锁的客户端（或等待旧配置持有的锁全部到期），再以新配置启动，不能滚动发布
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "distributed-lock.shards", name = "nodes")
+public class ShardedLockConfiguration implements DisposableBean {
+
+    private final Map<String, LettuceConnectionFactory> connectionFactories = new LinkedHashMap<>();
+
+    @Bean(destroyMethod = "destroy")
+    public ShardedRedisLock shardedRedisLock(@Value("${distributed-lock.shards.nodes}") String nodes,
+                                             @Value("${distributed-lock.shards.virtual-nodes:160}") int virtualNodes,
+                                             LeaseWatchdog leaseWatchdog, LockMetrics lockMetrics) {
+        for (String node : StringUtils.commaDelimitedListToStringArray(nodes)) {
+            RedisStandaloneConfiguration standalone = RedisNodeSpec.parse(node);
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(standalone);
+            factory.afterPropertiesSet();
+            // 以 host:port 作为节点名（不含密码），各客户端配置的顺序不同也能得到相同的环
+            connectionFactories.put(RedisNodeSpec.nameOf(standalone), factory);
+        }
+        return new ShardedRedisLock(connectionFactories, virtualNodes, leaseWatchdog, lockMetrics);
+    }
+
+    @Override
+    public void destroy() {
+        for (LettuceConnectionFactory factory : connectionFactories.values()) {
+            factory.destroy();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.lee.distributedlock.util.redis;
+
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.metrics.LockOperation;
+import com.lee.distributedlock.util.redis.task.LeaseRenewer;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import com.lee.distributedlock.util.redis.task.PostponeTask;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按一致性哈希把锁 key 分散到多个独立的 redis 实例上
+ * 每个 key 只在它所属的实例上加锁（与 RedisLockHelper 相同的脚本），总吞吐量随实例数近似线性增长；
+ * 每个实例有自己的释放通知订阅，续期共用看门狗，同一批到期的租约按实例分组，每个实例一次 lua 调用
+ * <p>
+ * 与 Redlock 不同，分片不提供容错：一个实例宕机只影响落在它上面的 key
+ */
+public class ShardedRedisLock implements DisposableBean {
+
+    private static final Long RELEASE_SUCCESS = 1L;
+    private static final Long POSTPONE_SUCCESS = 1L;
+
+    private final ConsistentHashRing<Shard> ring;
+    private final LeaseWatchdog leaseWatchdog;
+    private final LockMetrics lockMetrics;
+
+    private final LeaseRenewer postponeRenewer = new LeaseRenewer() {
+        @Override
+        public boolean renew(String key, String owner, long leaseMillis) {
+            Long result = ring.nodeFor(key).template.execute(RedisLockHelper.POSTPONE_LOCK_SCRIPT,
+                    Collections.singletonList(key), owner, String.valueOf(leaseMillis));
+            return POSTPONE_SUCCESS.equals(result);
+        }
+
+        @Override
+        public List<PostponeTask> renewAll(List<PostponeTask> leases) {
+            return ShardedRedisLock.this.renewAll(leases);
+        }
+    };
+
+    /**
+     * @param connectionFactories 实例名（如 host:port，各客户端必须一致）-> 已初始化的连接工厂
+     * @param virtualNodes        每个实例的虚拟节点数
+     */
+    public ShardedRedisLock(Map<String, ? extends RedisConnectionFactory> connectionFactories, int virtualNodes,
+                            LeaseWatchdog leaseWatchdog, LockMetrics lockMetrics) {
+        Map<String, Shard> shards = new LinkedHashMap<>();
+        connectionFactories.forEach((name, factory) -> shards.put(name, new Shard(factory)));
+        this.ring = new ConsistentHashRing<>(shards, virtualNodes);
+        this.leaseWatchdog = leaseWatchdog;
+        this.lockMetrics = lockMetrics;
+    }
+
+    /**
+     * 在 key 所属的实例上加锁
+     *
+     * @param lockKey   lockKey，含 {hash tag} 时按花括号内的部分分片
+     * @param owner     锁的持有者（最好是唯一键的）
+     * @param leaseTime 租约时长
+     * @param waitTime  最长等待时间，小于等于0时只尝试一次
+     * @param unit      时间单位
+     * @return true or false
+     */
+    public boolean lock(String lockKey, String owner, long leaseTime, long waitTime, TimeUnit unit) {
+        final Shard shard = ring.nodeFor(lockKey);
+        final long leaseMillis = unit.toMillis(leaseTime);
+        final List<String> keys = Collections.singletonList(lockKey);
+        final long start = lockMetrics.start();
+        boolean locked = shard.subscriber.acquire(lockKey, waitTime, unit,
+                () -> shard.template.execute(RedisLockHelper.ACQUIRE_LOCK_SCRIPT, keys, owner, String.valueOf(leaseMillis)));
+        if (locked && !leaseWatchdog.watch(lockKey, owner, leaseMillis, postponeRenewer)) {
+            // 看门狗登记表已满，锁不会续期，放弃这次加锁
+            this.unlock(lockKey, owner);
+            locked = false;
+        }
+        lockMetrics.acquire(LockOperation.REDIS_LOCK, lockKey, start, locked);
+        return locked;
+    }
+
+    /**
+     * 解锁
+     *
+     * @param lockKey key
+     * @param owner   锁的持有者
+     * @return 锁仍由 owner 持有并释放成功返回true
+     */
+    public boolean unlock(String lockKey, String owner) {
+        leaseWatchdog.cancel(lockKey, owner);
+        final long start = lockMetrics.start();
+        Long result = ring.nodeFor(lockKey).template.execute(RedisLockHelper.RELEASE_LOCK_SCRIPT,
+                Collections.singletonList(lockKey), owner, LockReleaseSubscriber.channelOf(lockKey));
+        lockMetrics.release(LockOperation.REDIS_UNLOCK, lockKey, start);
+        return RELEASE_SUCCESS.equals(result);
+    }
+
+    /**
+     * @return 分片数
+     */
+    public int size() {
+        return ring.getNodes().size();
+    }
+
+    /**
+     * @return key 所属实例的名字
+     */
+    public String shardOf(String lockKey) {
+        Shard shard = ring.nodeFor(lockKey);
+        for (Map.Entry<String, Shard> entry : ring.getNodes().entrySet()) {
+            if (entry.getValue() == shard) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("key 不属于任何分片: " + lockKey);
+    }
+
+    private List<PostponeTask> renewAll(List<PostponeTask> leases) {
+        Map<Shard, List<PostponeTask>> byShard = new IdentityHashMap<>();
+        for (PostponeTask lease : leases) {
+            byShard.computeIfAbsent(ring.nodeFor(lease.getKey()), s -> new ArrayList<>()).add(lease);
+        }
+        List<PostponeTask> lost = new ArrayList<>();
+        for (Map.Entry<Shard, List<PostponeTask>> entry : byShard.entrySet()) {
+            List<PostponeTask> batch = entry.getValue();
+            List<String> keys = new ArrayList<>(batch.size());
+            Object[] args = new Object[batch.size() * 2];
+            int i = 0;
+            for (PostponeTask lease : batch) {
+                keys.add(lease.getKey());
+                args[i++] = lease.getValue();
+                args[i++] = String.valueOf(lease.getExpireMillis());
+            }
+            lost.addAll(LeaseRenewer.pick(batch,
+                    entry.getKey().template.execute(RedisLockHelper.BATCH_POSTPONE_LOCK_SCRIPT, keys, args)));
+        }
+        return lost;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (Shard shard : ring.getNodes().values()) {
+            shard.subscriber.destroy();
+        }
+    }
+
+    /**
+     * 单个实例：命令连接 + 释放通知订阅
+     */
+    private static final class Shard {
+        private final StringRedisTemplate template;
+        private final LockReleaseSubscriber subscriber;
+
+        private Shard(RedisConnectionFactory factory) {
+            this.template = new StringRedisTemplate(factory);
+            this.subscriber = new LockReleaseSubscriber(factory);
+            this.subscriber.afterPropertiesSet();
+        }
+    }
+}
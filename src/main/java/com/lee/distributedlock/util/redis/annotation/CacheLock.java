@@ -17,18 +17,56 @@ public @interface CacheLock {
     String prefix() default "";
 
     /**
-     * 过期秒数,默认为5秒
+     * 过期时间,默认为5秒
      *
      * @return 轮询锁的时间
      */
     int expire() default 5;
 
-//    /**
-//     * 超时时间单位
-//     *
-//     * @return 秒
-//     */
-//    TimeUnit timeUnit() default TimeUnit.SECONDS;
+    /**
+     * 获取锁的最长等待时间，默认为0，即获取失败立即返回（重复提交）；
+     * 大于0时阻塞等待锁释放的通知，超时仍未获取到才失败
+     *
+     * @return 最长等待时间
+     */
+    int waitTime() default 0;
+
+    /**
+     * expire 和 waitTime 的时间单位
+     *
+     * @return 秒
+     */
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+
+    /**
+     * 加锁方式，默认为互斥锁；读多写少的接口可以使用 READ / WRITE
+     *
+     * @return 加锁方式
+     */
+    LockMode mode() default LockMode.EXCLUSIVE;
+
+    /**
+     * 锁引擎，默认为 redis；ZOOKEEPER / MEMORY 只支持 mode = EXCLUSIVE
+     *
+     * @return 锁引擎
+     */
+    LockBackendType backend() default LockBackendType.REDIS;
+
+    /**
+     * mode = SEMAPHORE 时同一个 key 的许可总数，即允许同时执行的调用数，默认为1
+     *
+     * @return 许可总数
+     */
+    int permits() default 1;
+
+    /**
+     * mode = EXCLUSIVE、backend = REDIS 时是否签发 fencing token，默认不签发；
+     * 签发时为每个锁 key 在 redis 中常驻一个计数器（"{key}:fence"），方法内通过 LockContext.currentToken() 取得。
+     * ZOOKEEPER / MEMORY 引擎签发 token 没有额外开销，总是签发；返回 Mono/Flux 的方法不支持
+     *
+     * @return 是否签发 fencing token
+     */
+    boolean fenced() default false;
 
     /**
      * <p>Key的分隔符（默认 :）</p>
@@ -0,0 +1,22 @@
+package com.lee.distributedlock.util.redis.annotation;
+
+/**
+ * @CacheLock 使用的锁引擎
+ */
+public enum LockBackendType {
+
+    /**
+     * redis，支持全部 LockMode，RedisLockHelper 等
+     */
+    REDIS,
+
+    /**
+     * zookeeper 临时顺序节点，只支持 EXCLUSIVE，DistributedLock_zk
+     */
+    ZOOKEEPER,
+
+    /**
+     * 进程内的锁，只在单实例部署或集成测试中使用，只支持 EXCLUSIVE，InMemoryLockBackend
+     */
+    MEMORY
+}
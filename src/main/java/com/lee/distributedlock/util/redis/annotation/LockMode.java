@@ -0,0 +1,48 @@
+package com.lee.distributedlock.util.redis.annotation;
+
+/**
+ * @CacheLock 的加锁方式
+ */
+public enum LockMode {
+
+    /**
+     * 可重入的互斥锁，持有者为当前线程，嵌套调用同一个 key 的方法只在本地计数，RedisLockHelper
+     */
+    EXCLUSIVE,
+
+    /**
+     * 共享读锁，RedisReadWriteLock
+     */
+    READ,
+
+    /**
+     * 独占写锁，RedisReadWriteLock
+     */
+    WRITE,
+
+    /**
+     * 信号量，同一个 key 最多允许 permits 个调用同时执行，RedisSemaphore
+     */
+    SEMAPHORE,
+
+    /**
+     * 在多个独立 redis 实例上按 Redlock 算法加锁，需配置 distributed-lock.redlock.nodes，RedisRedlock
+     */
+    REDLOCK,
+
+    /**
+     * 合并重复请求：同一个 key 只有一个调用真正执行，其余调用等待并共享它的结果，而不是抛出“重复提交”，
+     * 最多等待 waitTime（为0时等待 expire），RedisSingleFlight
+     */
+    SINGLE_FLIGHT,
+
+    /**
+     * 公平锁，等待者按到达顺序排队获得锁，热点 key 上等待时间的长尾有上界，RedisFairLock
+     */
+    FAIR,
+
+    /**
+     * 按一致性哈希把 key 分散到多个独立的 redis 实例上加锁，需配置 distributed-lock.shards.nodes，ShardedRedisLock
+     */
+    SHARDED
+}
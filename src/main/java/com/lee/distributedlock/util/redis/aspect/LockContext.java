@@ -0,0 +1,46 @@
+package com.lee.distributedlock.util.redis.aspect;
+
+/**
+ * 当前线程正在执行的 @CacheLock 方法持有的锁信息，由 LockMethodInterceptor 在执行业务逻辑前绑定、执行完后恢复，
+ * 嵌套的 @CacheLock 方法看到的是最内层的锁
+ * <p>
+ * 用法（redis 引擎需要 @CacheLock(fenced = true)）：
+ * <pre>
+ * long token = LockContext.currentToken();
+ * // UPDATE ... SET ..., fence = #{token} WHERE id = #{id} AND fence < #{token}
+ * </pre>
+ */
+public final class LockContext {
+
+    private static final ThreadLocal<Long> TOKEN = new ThreadLocal<>();
+
+    private LockContext() {
+    }
+
+    /**
+     * @return 当前锁的 fencing token，没有持有锁或该模式不签发 token 时返回0
+     */
+    public static long currentToken() {
+        Long token = TOKEN.get();
+        return token == null ? 0L : token;
+    }
+
+    /**
+     * 绑定 fencing token
+     *
+     * @return 绑定前的 token，执行完后交给 restore()
+     */
+    static Long bind(long token) {
+        Long previous = TOKEN.get();
+        TOKEN.set(token);
+        return previous;
+    }
+
+    static void restore(Long previous) {
+        if (previous == null) {
+            TOKEN.remove();
+        } else {
+            TOKEN.set(previous);
+        }
+    }
+}
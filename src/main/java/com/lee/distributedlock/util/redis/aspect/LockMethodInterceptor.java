@@ -1,7 +1,20 @@
 package com.lee.distributedlock.util.redis.aspect;
 
+import com.lee.distributedlock.util.backend.LockBackend;
+import com.lee.distributedlock.util.backend.LockBackends;
+import com.lee.distributedlock.util.metrics.HotKeyProfiler;
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.redis.RedisFairLock;
+import com.lee.distributedlock.util.redis.LockOwners;
 import com.lee.distributedlock.util.redis.RedisLockHelper;
+import com.lee.distributedlock.util.redis.RedisReadWriteLock;
+import com.lee.distributedlock.util.redis.RedisRedlock;
+import com.lee.distributedlock.util.redis.RedisSemaphore;
+import com.lee.distributedlock.util.redis.RedisSingleFlight;
+import com.lee.distributedlock.util.redis.ShardedRedisLock;
 import com.lee.distributedlock.util.redis.annotation.CacheLock;
+import com.lee.distributedlock.util.redis.annotation.LockBackendType;
+import com.lee.distributedlock.util.redis.annotation.LockMode;
 import com.lee.distributedlock.util.redis.keyGenerator.CacheKeyGenerator;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
@@ -13,19 +26,43 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Method;
-import java.util.UUID;
+import java.util.concurrent.TimeoutException;
 
 @Aspect
 @Configuration
 public class LockMethodInterceptor {
 
+    // 加锁成功但该模式不签发 fencing token
+    private static final long NO_TOKEN = -1L;
+
     @Autowired
     private RedisLockHelper redisLockHelper;
+    @Autowired
+    private RedisReadWriteLock redisReadWriteLock;
+    @Autowired
+    private RedisSemaphore redisSemaphore;
+    @Autowired
+    private RedisFairLock redisFairLock;
+    @Autowired(required = false)
+    private RedisRedlock redisRedlock;
+    @Autowired
+    private RedisSingleFlight redisSingleFlight;
+    @Autowired(required = false)
+    private ShardedRedisLock shardedRedisLock;
+    @Autowired
+    private LockBackends lockBackends;
+    @Autowired
+    private LockMetrics lockMetrics;
+    @Autowired
+    private HotKeyProfiler hotKeyProfiler;
+    @Autowired
     @Qualifier("lockKeyGenerator")
     private CacheKeyGenerator cacheKeyGenerator;
 
 
-    @Around("execution(public * *(..)) && @annotation(com.lee.distributedlock.util.redis.annotation.CacheLock)")
+    // 返回 Mono/Flux 的方法由 ReactiveLockMethodInterceptor 处理
+    @Around("execution(public * *(..)) && @annotation(com.lee.distributedlock.util.redis.annotation.CacheLock)" +
+            " && !execution(public reactor.core.publisher.Mono *(..)) && !execution(public reactor.core.publisher.Flux *(..))")
     public Object interceptor(ProceedingJoinPoint pjp) {
         MethodSignature signature = (MethodSignature) pjp.getSignature();
         Method method = signature.getMethod();
@@ -35,23 +72,165 @@ public class LockMethodInterceptor {
         }
         // 分布式锁的key
         final String lockKey = cacheKeyGenerator.getLockKey(pjp);
-        // client(最好是唯一键的)，分布式锁的值= 时间戳 + "|" +uuid
-        String uuid = UUID.randomUUID().toString();
+        final LockBackend backend = this.backend(lock);
+        if (lock.mode() == LockMode.SINGLE_FLIGHT) {
+            return this.singleFlight(pjp, method, lock, lockKey);
+        }
+        // client(最好是唯一键的)，进程标识 + 线程序号 + 线程内序号，不经过 SecureRandom；
+        // redis 互斥锁按线程重入，持有者就是当前线程，不必生成新的标识
+        final String uuid = backend == null && lock.mode() == LockMode.EXCLUSIVE
+                ? LockOwners.currentThread() : LockOwners.next();
+        // 假设上锁成功，但是设置过期时间失效，以后拿到的都是 false
+        // waitTime > 0 时阻塞等待锁释放通知
+        final long lockStart = hotKeyProfiler.start();
+        // 指标按注解的 prefix 打标签，只在加锁、解锁期间绑定，业务逻辑中的其他锁不受影响
+        final String previousPrefix = lockMetrics.bindPrefix(lock.prefix());
+        final long token;
         try {
-            // 假设上锁成功，但是设置过期时间失效，以后拿到的都是 false
-            final boolean success = redisLockHelper.lock(lockKey, uuid, lock.expire());
-            if (!success) {
-                throw new RuntimeException("重复提交");
-            }
+            token = backend != null
+                    ? backend.tryAcquire(lockKey, uuid, lock.expire(), lock.waitTime(), lock.timeUnit())
+                    : this.lock(lock, lockKey, uuid);
+        } finally {
+            lockMetrics.restorePrefix(previousPrefix);
+        }
+        hotKeyProfiler.acquired(lockKey, lockStart, token != 0);
+        if (token == 0) {
+            // 加锁失败不解锁：可重入锁的持有者是当前线程，解锁会删掉外层调用仍持有的锁
+            lockMetrics.rejected(lock.prefix());
+            throw new RuntimeException("重复提交");
+        }
+        try {
+            final long heldSince = lockMetrics.start();
+            final long profiledSince = hotKeyProfiler.start();
+            // 业务逻辑中可以通过 LockContext.currentToken() 取得 fencing token
+            final Long previousToken = LockContext.bind(token > 0 ? token : 0L);
             try {
                 // 执行业务逻辑
                 return pjp.proceed();
             } catch (Throwable throwable) {
                 throw new RuntimeException("系统异常");
+            } finally {
+                LockContext.restore(previousToken);
+                lockMetrics.held(lock.prefix(), heldSince);
+                hotKeyProfiler.held(lockKey, profiledSince);
             }
         } finally {
             // 执行完后解锁
-            redisLockHelper.unlock(lockKey, uuid);
+            final String previous = lockMetrics.bindPrefix(lock.prefix());
+            try {
+                if (backend != null) {
+                    backend.release(lockKey, uuid);
+                } else {
+                    this.unlock(lock, lockKey, uuid);
+                }
+            } finally {
+                lockMetrics.restorePrefix(previous);
+            }
+        }
+    }
+
+    /**
+     * 重复请求等待并共享正在执行的调用的结果
+     */
+    private Object singleFlight(ProceedingJoinPoint pjp, Method method, CacheLock lock, String lockKey) {
+        final long waitTime = lock.waitTime() > 0 ? lock.waitTime() : lock.expire();
+        try {
+            return redisSingleFlight.execute(lockKey, method.getGenericReturnType(), lock.expire(), waitTime,
+                    lock.timeUnit(), () -> {
+                        final long heldSince = lockMetrics.start();
+                        try {
+                            return pjp.proceed();
+                        } catch (Exception e) {
+                            throw e;
+                        } catch (Throwable throwable) {
+                            throw new RuntimeException(throwable);
+                        } finally {
+                            lockMetrics.held(lock.prefix(), heldSince);
+                        }
+                    });
+        } catch (TimeoutException e) {
+            lockMetrics.rejected(lock.prefix());
+            throw new RuntimeException("重复提交");
+        } catch (Exception e) {
+            throw new RuntimeException("系统异常");
+        }
+    }
+
+    /**
+     * @return backend = REDIS 时返回null，由下面按 mode 选择 redis 锁；其余引擎只支持 EXCLUSIVE
+     */
+    private LockBackend backend(CacheLock lock) {
+        if (lock.backend() == LockBackendType.REDIS) {
+            return null;
+        }
+        if (lock.mode() != LockMode.EXCLUSIVE) {
+            throw new IllegalStateException("backend = " + lock.backend() + " 只支持 mode = EXCLUSIVE");
+        }
+        return lockBackends.get(lock.backend());
+    }
+
+    private ShardedRedisLock sharded() {
+        if (shardedRedisLock == null) {
+            throw new IllegalStateException("mode = SHARDED 需要配置 distributed-lock.shards.nodes");
+        }
+        return shardedRedisLock;
+    }
+
+    private RedisRedlock redlock() {
+        if (redisRedlock == null) {
+            throw new IllegalStateException("mode = REDLOCK 需要配置 distributed-lock.redlock.nodes");
+        }
+        return redisRedlock;
+    }
+
+    /**
+     * @return 加锁失败返回0；EXCLUSIVE 模式且 fenced = true 时返回 fencing token，其余情况不签发 token，成功返回 NO_TOKEN
+     */
+    private long lock(CacheLock lock, String lockKey, String uuid) {
+        switch (lock.mode()) {
+            case READ:
+                return granted(redisReadWriteLock.readLock(lockKey, uuid, lock.expire(), lock.waitTime(), lock.timeUnit()));
+            case WRITE:
+                return granted(redisReadWriteLock.writeLock(lockKey, uuid, lock.expire(), lock.waitTime(), lock.timeUnit()));
+            case SEMAPHORE:
+                // 每次调用占用一个许可
+                return granted(redisSemaphore.acquire(lockKey, uuid, lock.permits(), 1, lock.expire(), lock.waitTime(), lock.timeUnit()));
+            case FAIR:
+                return granted(redisFairLock.lock(lockKey, uuid, lock.expire(), lock.waitTime(), lock.timeUnit()));
+            case SHARDED:
+                return granted(sharded().lock(lockKey, uuid, lock.expire(), lock.waitTime(), lock.timeUnit()));
+            case REDLOCK:
+                return granted(redlock().lock(lockKey, uuid, lock.expire(), lock.waitTime(), lock.timeUnit()) > 0);
+            default:
+                // 可重入：嵌套调用同一个 key 的 @CacheLock 方法不会被判为重复提交
+                return redisLockHelper.lockReentrant(lockKey, lock.expire(), lock.waitTime(), lock.timeUnit(), lock.fenced());
+        }
+    }
+
+    private static long granted(boolean locked) {
+        return locked ? NO_TOKEN : 0L;
+    }
+
+    private void unlock(CacheLock lock, String lockKey, String uuid) {
+        switch (lock.mode()) {
+            case READ:
+            case WRITE:
+                redisReadWriteLock.unlock(lockKey, uuid);
+                break;
+            case SEMAPHORE:
+                redisSemaphore.release(lockKey, uuid, 1);
+                break;
+            case FAIR:
+                redisFairLock.unlock(lockKey, uuid);
+                break;
+            case SHARDED:
+                sharded().unlock(lockKey, uuid);
+                break;
+            case REDLOCK:
+                redlock().unlock(lockKey, uuid);
+                break;
+            default:
+                redisLockHelper.unlockReentrant(lockKey);
         }
     }
 }
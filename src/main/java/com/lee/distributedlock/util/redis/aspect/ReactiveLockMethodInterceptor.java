@@ -0,0 +1,117 @@
+package com.lee.distributedlock.util.redis.aspect;
+
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.redis.LockOwners;
+import com.lee.distributedlock.util.redis.RedisLockHelper;
+import com.lee.distributedlock.util.redis.annotation.CacheLock;
+import com.lee.distributedlock.util.redis.annotation.LockBackendType;
+import com.lee.distributedlock.util.redis.annotation.LockMode;
+import com.lee.distributedlock.util.redis.keyGenerator.CacheKeyGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * 返回 Mono/Flux 的 @CacheLock 方法的切面
+ * 加锁、解锁都走 RedisLockHelper 的非阻塞 API，在订阅时加锁，流结束（完成、出错或取消）时解锁，
+ * 整个过程不阻塞调用线程；目前只支持 EXCLUSIVE 模式。
+ * 加锁不经过本地排队（LocalLockCoalescer），也不签发 fencing token（业务流不在加锁线程上执行，无法绑定 LockContext），
+ * 因此不支持 fenced = true
+ */
+@Slf4j
+@Aspect
+@Configuration
+public class ReactiveLockMethodInterceptor {
+
+    @Autowired
+    private RedisLockHelper redisLockHelper;
+    @Autowired
+    private LockMetrics lockMetrics;
+    @Autowired
+    @Qualifier("lockKeyGenerator")
+    private CacheKeyGenerator cacheKeyGenerator;
+
+    @Around("execution(public reactor.core.publisher.Mono *(..)) && @annotation(com.lee.distributedlock.util.redis.annotation.CacheLock)")
+    public Object interceptMono(ProceedingJoinPoint pjp) {
+        CacheLock lock = this.lockOf(pjp);
+        final String lockKey = cacheKeyGenerator.getLockKey(pjp);
+        return Mono.defer(() -> {
+            final String uuid = LockOwners.next();
+            return this.lock(lock, lockKey, uuid)
+                    .flatMap(locked -> Mono.from(this.proceed(pjp, lock, lockKey, uuid)));
+        });
+    }
+
+    @Around("execution(public reactor.core.publisher.Flux *(..)) && @annotation(com.lee.distributedlock.util.redis.annotation.CacheLock)")
+    public Object interceptFlux(ProceedingJoinPoint pjp) {
+        CacheLock lock = this.lockOf(pjp);
+        final String lockKey = cacheKeyGenerator.getLockKey(pjp);
+        return Flux.defer(() -> {
+            final String uuid = LockOwners.next();
+            return this.lock(lock, lockKey, uuid)
+                    .flatMapMany(locked -> this.proceed(pjp, lock, lockKey, uuid));
+        });
+    }
+
+    private CacheLock lockOf(ProceedingJoinPoint pjp) {
+        CacheLock lock = ((MethodSignature) pjp.getSignature()).getMethod().getAnnotation(CacheLock.class);
+        if (StringUtils.isEmpty(lock.prefix())) {
+            throw new RuntimeException("lock key don't null...");
+        }
+        if (lock.mode() != LockMode.EXCLUSIVE || lock.backend() != LockBackendType.REDIS) {
+            throw new IllegalStateException("返回 Mono/Flux 的方法只支持 mode = EXCLUSIVE、backend = REDIS");
+        }
+        if (lock.fenced()) {
+            throw new IllegalStateException("返回 Mono/Flux 的方法不支持 fenced = true");
+        }
+        return lock;
+    }
+
+    /**
+     * 加锁失败时发出 "重复提交" 异常
+     */
+    private Mono<Boolean> lock(CacheLock lock, String lockKey, String uuid) {
+        return redisLockHelper.lockReactive(lockKey, uuid, lock.expire(), lock.waitTime(), lock.timeUnit())
+                .filter(Boolean::booleanValue)
+                .switchIfEmpty(Mono.defer(() -> {
+                    lockMetrics.rejected(lock.prefix());
+                    return Mono.error(new RuntimeException("重复提交"));
+                }));
+    }
+
+    /**
+     * 执行业务逻辑，业务流结束后解锁
+     */
+    private Flux<?> proceed(ProceedingJoinPoint pjp, CacheLock lock, String lockKey, String uuid) {
+        final long heldSince = lockMetrics.start();
+        Publisher<?> body;
+        try {
+            body = (Publisher<?>) pjp.proceed();
+            if (body == null) {
+                body = Mono.empty();
+            }
+        } catch (Throwable throwable) {
+            body = Mono.error(throwable);
+        }
+        return Flux.from(body)
+                .onErrorMap(throwable -> new RuntimeException("系统异常"))
+                .doFinally(signal -> {
+                    lockMetrics.held(lock.prefix(), heldSince);
+                    // 解锁不阻塞业务流的结束信号；解锁失败时锁由看门狗停止续期后到期释放
+                    redisLockHelper.unlockReactive(lockKey, uuid).subscribe(
+                            released -> {
+                            },
+                            throwable -> log.warn("分布式锁释放失败: {}", lockKey, throwable));
+                });
+    }
+}
@@ -5,59 +5,160 @@ import com.lee.distributedlock.util.redis.annotation.CacheParam;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.stereotype.Component;
-import org.springframework.util.ReflectionUtils;
-import org.springframework.util.StringUtils;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Key 生成策略实现类
  * 主要是解析被 @CacheLock 注解的方法的信息，获取对应的属性值，生成一个全新的缓存 Key
+ * <p>
+ * 注解只在方法第一次被调用时解析一次，编译成 KeyPlan 缓存起来，之后每次调用只按计划读取参数值拼接，
+ * 实体对象属性的读取预先编译成 MethodHandle，不再每次 getDeclaredFields() + setAccessible()
  */
 @Component("lockKeyGenerator")
 public class LockKeyGenerator implements CacheKeyGenerator {
 
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    // 拼接 key 的 StringBuilder 按线程复用，过大时丢弃避免长期占用内存
+    private static final int BUILDER_CAPACITY = 128;
+    private static final int BUILDER_MAX_CAPACITY = 4096;
+    private static final ThreadLocal<StringBuilder> BUILDER =
+            ThreadLocal.withInitial(() -> new StringBuilder(BUILDER_CAPACITY));
+
+    // 实体类中标注了 @CacheParam 的属性读取器，按类缓存
+    private static final ClassValue<MethodHandle[]> ENTITY_GETTERS = new ClassValue<MethodHandle[]>() {
+        @Override
+        protected MethodHandle[] computeValue(Class<?> type) {
+            return compileGetters(type);
+        }
+    };
+
+    // 被 @CacheLock 注解的方法 -> key 生成计划
+    private final ConcurrentMap<Method, KeyPlan> plans = new ConcurrentHashMap<>();
+
     @Override
     public String getLockKey(ProceedingJoinPoint pjp) {
         MethodSignature signature = (MethodSignature) pjp.getSignature();
-        Method method = signature.getMethod();
-        CacheLock lockAnnotation = method.getAnnotation(CacheLock.class);
-        // 被@CacheLock注解的方法的所有参数对象
-        final Object[] args = pjp.getArgs();
-        // 被@CacheLock注解的方法的所有参数信息（包括参数名）
-        final Parameter[] parameters = method.getParameters();
-        StringBuilder builder = new StringBuilder();
-        // TODO 默认解析方法里面带 CacheParam 注解的属性,如果没有尝试着解析实体对象中的
-        for (int i = 0; i < parameters.length; i++) {
-            final CacheParam annotation = parameters[i].getAnnotation(CacheParam.class);
-            // 第i个参数没有标注 @CacheParam，遍历下一个参数
-            if (annotation == null) {
+        return getLockKey(signature.getMethod(), pjp.getArgs());
+    }
+
+    /**
+     * 按方法的 key 生成计划拼接 key
+     *
+     * @param method 被 @CacheLock 注解的方法
+     * @param args   方法的所有参数对象
+     * @return 缓存KEY
+     */
+    public String getLockKey(Method method, Object[] args) {
+        KeyPlan plan = plans.get(method);
+        if (plan == null) {
+            plan = plans.computeIfAbsent(method, KeyPlan::new);
+        }
+        return plan.render(args);
+    }
+
+    /**
+     * 把类中标注了 @CacheParam 的属性编译成 MethodHandle，类型统一为 (Object)Object
+     */
+    private static MethodHandle[] compileGetters(Class<?> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<MethodHandle> getters = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (field.getAnnotation(CacheParam.class) == null) {
                 continue;
             }
-            // 拼接上":"+第i个参数值
-            builder.append(lockAnnotation.delimiter()).append(args[i]);
+            try {
+                field.setAccessible(true);
+                MethodHandle getter = lookup.unreflectGetter(field);
+                if (Modifier.isStatic(field.getModifiers())) {
+                    getter = MethodHandles.dropArguments(getter, 0, Object.class);
+                }
+                getters.add(getter.asType(GETTER_TYPE));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("无法读取 @CacheParam 属性: " + field, e);
+            }
+        }
+        return getters.toArray(new MethodHandle[0]);
+    }
+
+    private static StringBuilder builder() {
+        StringBuilder builder = BUILDER.get();
+        if (builder.capacity() > BUILDER_MAX_CAPACITY) {
+            builder = new StringBuilder(BUILDER_CAPACITY);
+            BUILDER.set(builder);
         }
-        if (StringUtils.isEmpty(builder.toString())) {
-            // 获取该方法上的所有参数注解信息
+        builder.setLength(0);
+        return builder;
+    }
+
+    /**
+     * 单个方法的 key 生成计划
+     */
+    private static final class KeyPlan {
+
+        private final String prefix;
+        private final String delimiter;
+        // 标注了 @CacheParam 的参数下标，为空时把所有参数当作实体对象解析
+        private final int[] paramIndexes;
+
+        private KeyPlan(Method method) {
+            CacheLock lockAnnotation = method.getAnnotation(CacheLock.class);
+            this.prefix = lockAnnotation.prefix();
+            this.delimiter = lockAnnotation.delimiter();
+            // 获取该方法上的所有参数注解信息，找出标了 @CacheParam 的参数
             final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+            int[] indexes = new int[parameterAnnotations.length];
+            int count = 0;
             for (int i = 0; i < parameterAnnotations.length; i++) {
-                // 遍历第i个方法参数看作实体对象解析，遍历其所有属性，找出标了 @CacheParam 的属性
-                final Object object = args[i];
-                final Field[] fields = object.getClass().getDeclaredFields();
-                for (Field field : fields) {
-                    final CacheParam annotation = field.getAnnotation(CacheParam.class);
-                    if (annotation == null) {
+                for (Annotation annotation : parameterAnnotations[i]) {
+                    if (annotation instanceof CacheParam) {
+                        indexes[count++] = i;
+                        break;
+                    }
+                }
+            }
+            this.paramIndexes = new int[count];
+            System.arraycopy(indexes, 0, this.paramIndexes, 0, count);
+        }
+
+        private String render(Object[] args) {
+            StringBuilder builder = builder().append(prefix);
+            if (paramIndexes.length > 0) {
+                // 拼接上":"+第i个参数值
+                for (int index : paramIndexes) {
+                    builder.append(delimiter).append(args[index]);
+                }
+            } else {
+                // 没有参数标注 @CacheParam，把每个参数看作实体对象，拼接其中标了 @CacheParam 的属性
+                for (Object object : args) {
+                    if (object == null) {
                         continue;
                     }
-                    field.setAccessible(true);
-                    // 拼接上":"+被注解的这个属性值
-                    builder.append(lockAnnotation.delimiter()).append(ReflectionUtils.getField(field, object));
+                    for (MethodHandle getter : ENTITY_GETTERS.get(object.getClass())) {
+                        builder.append(delimiter).append(readField(getter, object));
+                    }
                 }
             }
+            return builder.toString();
+        }
+
+        private static Object readField(MethodHandle getter, Object object) {
+            try {
+                return (Object) getter.invokeExact(object);
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("读取 @CacheParam 属性失败", throwable);
+            }
         }
-        return lockAnnotation.prefix() + builder.toString();
     }
-}
\ No newline at end of file
+}
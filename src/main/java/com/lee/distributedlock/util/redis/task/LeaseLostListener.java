@@ -0,0 +1,16 @@
+package com.lee.distributedlock.util.redis.task;
+
+/**
+ * 租约丢失的回调：续期时发现锁已不属于当前持有者（过期后被其他客户端获取、或被误删）
+ */
+@FunctionalInterface
+public interface LeaseLostListener {
+
+    /**
+     * 在续期线程中回调，不要执行耗时操作
+     *
+     * @param key   锁key
+     * @param owner 锁的持有者标识
+     */
+    void leaseLost(String key, String owner);
+}
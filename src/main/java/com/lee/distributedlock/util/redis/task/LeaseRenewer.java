@@ -0,0 +1,58 @@
+package com.lee.distributedlock.util.redis.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 锁租约的续期动作，由具体的锁实现提供，看门狗到期时回调
+ * 看门狗把同一个 tick 内到期、且续期动作相同的租约合并成一批调用 renewAll()，
+ * 锁实现可以覆盖 renewAll() 用一次 lua 调用续期整批租约
+ */
+@FunctionalInterface
+public interface LeaseRenewer {
+
+    /**
+     * 续期
+     *
+     * @param key         锁key
+     * @param owner       锁的持有者标识
+     * @param leaseMillis 续期后的租约时长，单位: 毫秒
+     * @return 续期成功返回true，锁已不属于该持有者返回false
+     */
+    boolean renew(String key, String owner, long leaseMillis);
+
+    /**
+     * 批量续期，默认逐个调用 renew()
+     *
+     * @param leases 本次到期的租约
+     * @return 续期失败（锁已丢失）的租约
+     */
+    default List<PostponeTask> renewAll(List<PostponeTask> leases) {
+        List<PostponeTask> lost = new ArrayList<>();
+        for (PostponeTask lease : leases) {
+            if (!renew(lease.getKey(), lease.getValue(), lease.getExpireMillis())) {
+                lost.add(lease);
+            }
+        }
+        return lost;
+    }
+
+    /**
+     * 按批量续期脚本返回的下标（从1开始）取出丢失的租约
+     *
+     * @param leases  本次续期的租约
+     * @param indexes 续期失败的下标
+     * @return 续期失败的租约
+     */
+    static List<PostponeTask> pick(List<PostponeTask> leases, List<?> indexes) {
+        if (indexes == null || indexes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<PostponeTask> lost = new ArrayList<>(indexes.size());
+        for (Object index : indexes) {
+            lost.add(leases.get(((Number) index).intValue() - 1));
+        }
+        return lost;
+    }
+}
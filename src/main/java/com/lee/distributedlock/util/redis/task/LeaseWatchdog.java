@@ -0,0 +1,332 @@
+package com.lee.distributedlock.util.redis.task;
+
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁租约看门狗
+ * 所有持有中的锁共用一个时间轮线程 + 固定大小的续期线程池，线程数与持有的锁数量无关；
+ * 加锁成功时 watch() 登记租约，解锁时 cancel() 立即移除；登记表有容量上限，超过上限时 watch() 返回false，
+ * 锁实现应立即释放刚获得的锁并按加锁失败处理，不能持有一把不会续期的锁
+ * <p>
+ * 批量续期：到期的租约先进入待续期队列，每个 tick 统一取出一次，按续期动作分组、每 batch-size 个一批，
+ * 每批只调用一次 LeaseRenewer.renewAll()（一次 lua 往返），持有上万把锁的节点续期命令数也只与 tick 数相关；
+ * 续期失败的租约从登记表移除并回调 LeaseLostListener；续期异常（网络抖动、redis 暂时不可用）的租约不等下一个周期，
+ * 在下一个 tick 重试，直到续期成功、确认丢失或被解锁。批量脚本在 redis cluster 下按 slot 分组执行（见 RedisLockHelper.slotBatches()）
+ * <p>
+ * 可重入：同一个持有者再次加锁时只在登记表中把该租约的持有次数加一（reenter()），
+ * 解锁时减一（exit()），减到0才真正解锁，整条重入链共用最外层加锁登记的一个租约
+ */
+@Slf4j
+@Component
+public class LeaseWatchdog implements DisposableBean {
+
+    private final HashedWheelTimer timer;
+    private final ExecutorService renewExecutor;
+    private final ConcurrentMap<LeaseId, PostponeTask> leases = new ConcurrentHashMap<>();
+    private final int maxLeases;
+    private final int batchSize;
+    private final long tickMillis;
+    private final LockMetrics lockMetrics;
+    // 已到期、等待下一次批量续期的租约
+    private final ConcurrentLinkedQueue<PostponeTask> due = new ConcurrentLinkedQueue<>();
+    private final List<LeaseLostListener> lostListeners = new CopyOnWriteArrayList<>();
+
+    public LeaseWatchdog(@Value("${distributed-lock.watchdog.tick-millis:100}") long tickMillis,
+                         @Value("${distributed-lock.watchdog.renew-threads:2}") int renewThreads,
+                         @Value("${distributed-lock.watchdog.max-leases:65536}") int maxLeases,
+                         @Value("${distributed-lock.watchdog.batch-size:256}") int batchSize,
+                         LockMetrics lockMetrics) {
+        this.timer = new HashedWheelTimer(new DefaultThreadFactory("lease-watchdog", true),
+                tickMillis, TimeUnit.MILLISECONDS, 512);
+        this.renewExecutor = Executors.newFixedThreadPool(renewThreads, new DefaultThreadFactory("lease-renewer", true));
+        this.maxLeases = maxLeases;
+        this.batchSize = Math.max(1, batchSize);
+        this.tickMillis = tickMillis;
+        this.lockMetrics = lockMetrics;
+        this.timer.newTimeout(new BatchFlusher(), tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 登记一个租约，租约时长的2/3后开始续期
+     *
+     * @param key         锁key
+     * @param owner       锁的持有者标识
+     * @param leaseMillis 租约时长，单位: 毫秒
+     * @param renewer     续期动作
+     * @return 登记成功返回true，登记表已满返回false
+     */
+    public boolean watch(String key, String owner, long leaseMillis, LeaseRenewer renewer) {
+        return this.watch(key, owner, leaseMillis, renewer, 0L);
+    }
+
+    /**
+     * 登记一个租约，并记下加锁时签发的 fencing token，重入时返回给内层
+     *
+     * @param token fencing token
+     * @see #watch(String, String, long, LeaseRenewer)
+     */
+    public boolean watch(String key, String owner, long leaseMillis, LeaseRenewer renewer, long token) {
+        if (leases.size() >= maxLeases) {
+            log.warn("看门狗登记的租约数已达上限 {}，该锁不再续期, key: {}", maxLeases, key);
+            return false;
+        }
+        PostponeTask task = new PostponeTask(key, owner, leaseMillis, renewer, this, token, lockMetrics.prefixOf(key));
+        PostponeTask previous = leases.put(new LeaseId(key, owner), task);
+        if (previous != null) {
+            previous.stop();
+        }
+        schedule(task);
+        return true;
+    }
+
+    /**
+     * 取消租约续期
+     *
+     * @param key   锁key
+     * @param owner 锁的持有者标识
+     */
+    public void cancel(String key, String owner) {
+        PostponeTask task = leases.remove(new LeaseId(key, owner));
+        if (task != null) {
+            task.stop();
+        }
+    }
+
+    /**
+     * 重入：owner 仍持有 key 的租约时把持有次数加一，不访问 redis
+     *
+     * @param key   锁key
+     * @param owner 锁的持有者标识
+     * @return 重入成功返回该租约，未持有（或租约已丢失）返回null
+     */
+    public PostponeTask reenter(String key, String owner) {
+        PostponeTask task = leases.get(new LeaseId(key, owner));
+        if (task == null || !task.isRunning()) {
+            return null;
+        }
+        task.holds().incrementAndGet();
+        return task;
+    }
+
+    /**
+     * 退出一层重入
+     *
+     * @param key   锁key
+     * @param owner 锁的持有者标识
+     * @return 剩余的持有次数，为0时由调用方真正解锁；owner 没有登记该租约（从未加锁成功，或租约已丢失）时返回-1
+     */
+    public int exit(String key, String owner) {
+        PostponeTask task = leases.get(new LeaseId(key, owner));
+        if (task == null) {
+            return -1;
+        }
+        return Math.max(0, task.holds().decrementAndGet());
+    }
+
+    /**
+     * @return 当前正在续期的租约（只读视图）
+     */
+    public Collection<PostponeTask> leases() {
+        return Collections.unmodifiableCollection(leases.values());
+    }
+
+    public int size() {
+        return leases.size();
+    }
+
+    /**
+     * @return 时间轮的 tick，到期的租约最多延迟一个 tick 才续期
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * 注册租约丢失的回调
+     */
+    public void addLeaseLostListener(LeaseLostListener listener) {
+        lostListeners.add(listener);
+    }
+
+    void schedule(PostponeTask task) {
+        if (!task.isRunning()) {
+            return;
+        }
+        task.setTimeout(timer.newTimeout(task, task.periodMillis(), TimeUnit.MILLISECONDS));
+        // 与 stop() 并发时，保证不会留下已停止任务的定时器
+        if (!task.isRunning()) {
+            task.stop();
+        }
+    }
+
+    /**
+     * 续期失败时由任务自己移除，只移除自己，不影响同 key 同 owner 新登记的租约
+     */
+    void remove(PostponeTask task) {
+        leases.remove(new LeaseId(task.getKey(), task.getValue()), task);
+        task.stop();
+    }
+
+    /**
+     * 时间轮回调：租约到期，等待下一次批量续期
+     */
+    void enqueue(PostponeTask task) {
+        due.add(task);
+    }
+
+    /**
+     * 取出所有到期的租约，按续期动作分组、分批交给续期线程池
+     */
+    private void flush() {
+        Map<LeaseRenewer, List<PostponeTask>> groups = null;
+        PostponeTask task;
+        while ((task = due.poll()) != null) {
+            if (!task.isRunning()) {
+                continue;
+            }
+            if (groups == null) {
+                groups = new IdentityHashMap<>();
+            }
+            List<PostponeTask> batch = groups.computeIfAbsent(task.getRenewer(), r -> new ArrayList<>());
+            batch.add(task);
+            if (batch.size() >= batchSize) {
+                submit(task.getRenewer(), batch);
+                groups.remove(task.getRenewer());
+            }
+        }
+        if (groups != null) {
+            groups.forEach(this::submit);
+        }
+    }
+
+    private void submit(LeaseRenewer renewer, List<PostponeTask> batch) {
+        try {
+            renewExecutor.execute(() -> renew(renewer, batch));
+        } catch (RejectedExecutionException e) {
+            log.warn("看门狗已关闭，放弃续期 {} 个租约", batch.size());
+        }
+    }
+
+    /**
+     * 在续期线程池中执行一批续期
+     */
+    private void renew(LeaseRenewer renewer, List<PostponeTask> batch) {
+        List<PostponeTask> lost;
+        try {
+            lost = renewer.renewAll(batch);
+        } catch (Exception e) {
+            // 网络抖动等异常，整批在下一个 tick 重试；等一个完整周期的话，租约只剩1/3，再失败一次锁就过期了
+            log.error("批量锁延时异常, 租约数: " + batch.size(), e);
+            for (PostponeTask task : batch) {
+                lockMetrics.renewalError(task.getMetricPrefix());
+                if (task.isRunning()) {
+                    enqueue(task);
+                }
+            }
+            return;
+        }
+        Set<PostponeTask> lostSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        lostSet.addAll(lost);
+        for (PostponeTask task : batch) {
+            boolean renewed = !lostSet.contains(task);
+            lockMetrics.renewal(task.getMetricPrefix(), renewed);
+            if (renewed) {
+                schedule(task);
+            } else if (task.isRunning()) {
+                log.info("锁已不属于当前持有者，停止续期, key: {}", task.getKey());
+                remove(task);
+                notifyLost(task);
+            }
+        }
+    }
+
+    private void notifyLost(PostponeTask task) {
+        for (LeaseLostListener listener : lostListeners) {
+            try {
+                listener.leaseLost(task.getKey(), task.getValue());
+            } catch (Exception e) {
+                log.warn("租约丢失回调异常, key: {}", task.getKey(), e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (Timeout timeout : timer.stop()) {
+            timeout.cancel();
+        }
+        renewExecutor.shutdownNow();
+        leases.clear();
+        due.clear();
+    }
+
+    /**
+     * 每个 tick 触发一次批量续期，然后重新挂回时间轮
+     */
+    private final class BatchFlusher implements TimerTask {
+        @Override
+        public void run(Timeout timeout) {
+            try {
+                flush();
+            } finally {
+                try {
+                    timer.newTimeout(this, tickMillis, TimeUnit.MILLISECONDS);
+                } catch (IllegalStateException e) {
+                    // 看门狗已关闭
+                }
+            }
+        }
+    }
+
+    private static final class LeaseId {
+        private final String key;
+        private final String owner;
+
+        private LeaseId(String key, String owner) {
+            this.key = key;
+            this.owner = owner;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LeaseId)) {
+                return false;
+            }
+            LeaseId that = (LeaseId) o;
+            return key.equals(that.key) && Objects.equals(owner, that.owner);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + Objects.hashCode(owner);
+        }
+    }
+}
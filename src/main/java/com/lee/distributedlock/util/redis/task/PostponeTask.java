@@ -1,42 +1,108 @@
 package com.lee.distributedlock.util.redis.task;
 
-import com.lee.distributedlock.util.redis.RedisLockHelper;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 
-public class PostponeTask implements Runnable {
+import java.util.concurrent.atomic.AtomicInteger;
 
-    private String key;
-    private String value;
-    private long expireTime;
-    private boolean isRunning;
-    private RedisLockHelper redisLockHelper;
+/**
+ * 单个锁租约的续期任务
+ * 不再独占一个线程，而是挂在 LeaseWatchdog 的时间轮上，每隔租约时长的2/3触发一次续期，
+ * 到期后进入看门狗的待续期队列与其他租约合并续期，续期成功则重新挂回时间轮，续期失败或被 cancel() 后不再调度；
+ * 同时记录可重入锁的持有次数和加锁时签发的 fencing token
+ */
+public class PostponeTask implements TimerTask {
 
-    public PostponeTask(String key, String value, long expireTime, RedisLockHelper redisLockHelper) {
+    private final String key;
+    private final String value;
+    private final long expireMillis;
+    private final LeaseRenewer renewer;
+    private final LeaseWatchdog watchdog;
+    private final long token;
+    // 登记时的指标前缀，续期在看门狗线程上执行，拿不到加锁线程绑定的前缀
+    private final String metricPrefix;
+    // 可重入锁的持有次数，登记时为1
+    private final AtomicInteger holds = new AtomicInteger(1);
+    private volatile boolean isRunning;
+    private volatile Timeout timeout;
+
+    PostponeTask(String key, String value, long expireMillis, LeaseRenewer renewer, LeaseWatchdog watchdog, long token,
+                 String metricPrefix) {
         this.key = key;
         this.value = value;
-        this.expireTime = expireTime;
+        this.expireMillis = expireMillis;
+        this.renewer = renewer;
+        this.watchdog = watchdog;
+        this.token = token;
+        this.metricPrefix = metricPrefix;
         this.isRunning = Boolean.TRUE;
-        this.redisLockHelper = redisLockHelper;
     }
 
+    /**
+     * 时间轮线程回调，只把租约放入待续期队列，由看门狗在下一个 tick 批量续期，避免阻塞时间轮
+     */
     @Override
-    public void run() {
-        long waitTime = expireTime * 1000 * 2 / 3;// 线程等待多长时间后执行
-        while (isRunning) {
-            try {
-                Thread.sleep(waitTime);
-                if (redisLockHelper.postpone(key, value, expireTime)) {
-                    System.out.println("锁延时成功...........................................................");
-                } else {
-                    this.stop();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    public void run(Timeout timeout) {
+        if (isRunning) {
+            watchdog.enqueue(this);
         }
     }
 
-    private void stop() {
+    /**
+     * 停止续期，并从时间轮中移除
+     */
+    void stop() {
         this.isRunning = Boolean.FALSE;
+        Timeout t = this.timeout;
+        if (t != null) {
+            t.cancel();
+        }
+    }
+
+    /**
+     * 两次续期之间的间隔：租约时长的2/3
+     */
+    long periodMillis() {
+        return Math.max(1L, expireMillis * 2 / 3);
+    }
+
+    void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    boolean isRunning() {
+        return isRunning;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getExpireMillis() {
+        return expireMillis;
+    }
+
+    /**
+     * @return 加锁时签发的 fencing token，未签发时为0
+     */
+    public long getToken() {
+        return token;
+    }
+
+    String getMetricPrefix() {
+        return metricPrefix;
+    }
+
+    AtomicInteger holds() {
+        return holds;
+    }
+
+    LeaseRenewer getRenewer() {
+        return renewer;
     }
 
 }
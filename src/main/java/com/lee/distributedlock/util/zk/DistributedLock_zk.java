@@ -1,23 +1,33 @@
 package com.lee.distributedlock.util.zk;
 
-import lombok.AllArgsConstructor;
-import lombok.Value;
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.metrics.LockOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.framework.recipes.cache.PathChildrenCache;
-import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.Stat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /*
     使用方法：
 
-    //注入zk分布式锁工具类，调用初始化方法init(),监听zk节点的事件
+    //作为@Component时由@PostConstruct自动调用init()；手动创建时需要自己调用init()（可重复调用）
     @Bean(initMethod="init")
     public DistributedLock distributedLock() {
         return new DistributedLock();
@@ -26,9 +36,22 @@ import java.util.concurrent.CountDownLatch;
 
 /**
  * zookeeper分布式锁工具类
+ * <p>
+ * 公平锁：每个请求在锁节点下创建一个临时顺序节点（EPHEMERAL_SEQUENTIAL），序号最小的持有锁，
+ * 其余请求只监听自己的前一个节点，前一个节点删除时只唤醒它的后继者，
+ * 因此每次释放锁只产生一次通知，且按创建顺序（FIFO）获得锁，不会惊群
+ * <p>
+ * 多把锁：每个业务 key 对应 demo-locks 下的一个子节点，所有 key 共用同一个 zk 会话；
+ * watcher 只在有请求排队时存在（一次性），key 节点以容器节点创建，最后一个请求释放后删除，
+ * 因此内存和 watch 数量只与当前正在加锁/排队的请求数有关，与历史上出现过多少个 key 无关
+ * <p>
+ * fencing token：取锁节点的创建事务id（czxid），zk 的事务id全局单调递增，后获得锁的请求的节点一定创建得更晚；
+ * 不用顺序节点的序号，因为 key 节点删除重建后序号会从0开始
+ * <p>
+ * 可重入：当前线程已持有 key 的锁时再次加锁只把持有次数加一（否则会排在自己的节点后面永远等待），
+ * 释放同样次数后才删除锁节点
  */
 @Slf4j
-@AllArgsConstructor
 @Component
 public class DistributedLock_zk {
 
@@ -37,32 +60,73 @@ public class DistributedLock_zk {
 
     // 操作zk的客户端对象，由init()初始化
     private CuratorFramework client;
+    // client 是否由本类创建，只关闭自己创建的客户端，共用的会话由调用方关闭
+    private boolean ownsClient;
+    // init() 已执行过
+    private volatile boolean initialized;
 
-    // juc的计数器,调用其await()阻塞并挂起请求，等待上一个锁持有者调用countDown()使count=0（释放锁）才继续执行
-    private static CountDownLatch zkLockLatch = new CountDownLatch(1);
+    // 锁指标，未注入时不记录
+    private LockMetrics lockMetrics = LockMetrics.disabled();
+
+    // 当前线程持有的锁：key -> 锁节点及持有次数，持有次数减到0时删除，全部释放后清空
+    private final ThreadLocal<Map<String, Hold>> currentLocks = new ThreadLocal<>();
 
     // 分布式锁的总节点名称，不同项目中不同
     private static final String ZK_LOCK_PROJECT = "demo-locks";
-    // 分布式锁节点名称
+    // 默认的分布式锁节点名称
     private static final String DISTRIBUTED_LOCK = "distributed_lock";
+    // 锁节点下排队的临时顺序节点名称前缀
+    private static final String LOCK_NODE_PREFIX = "lock-";
+    // 排队节点的最多创建次数：key 节点可能在创建父节点与创建排队节点之间被其他客户端的释放删除
+    private static final int ENQUEUE_ATTEMPTS = 3;
+
+    public DistributedLock_zk() {
+    }
+
+    public DistributedLock_zk(String zookeeperServer) {
+        this.ZOOKEEPER_SERVER = zookeeperServer;
+    }
+
+    /**
+     * 共用已有的zk会话
+     *
+     * @param client 已启动的客户端
+     */
+    public DistributedLock_zk(CuratorFramework client) {
+        this.client = client;
+    }
+
+    @Autowired(required = false)
+    public void setLockMetrics(LockMetrics lockMetrics) {
+        this.lockMetrics = lockMetrics;
+    }
 
     /**
      * 初始化锁
      * 锁的层次结构：
      * ZKLocks-NameSpace(命名空间)
      * |—— demo-locks(总节点名称)
-     * |—— distributed_lock(锁节点名称)
+     * |—— {key}(锁节点名称，容器节点)
+     * |—— lock-0000000001(排队的临时顺序节点)
      */
-    public void init() {
-        // 创建zk客户端
-        CuratorFrameworkFactory.builder()
-                .connectString(ZOOKEEPER_SERVER)   //zk所在url
-                .sessionTimeoutMs(10000)
-                .retryPolicy(new ExponentialBackoffRetry(1000, 5))    //重试策略
-                .namespace("ZKLocks-NameSpace")  //命名空间
-                .build();
-        // 启动客户端
-        client.start();
+    @PostConstruct
+    public synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        if (client == null) {
+            // 创建zk客户端
+            client = CuratorFrameworkFactory.builder()
+                    .connectString(ZOOKEEPER_SERVER)   //zk所在url
+                    .sessionTimeoutMs(10000)
+                    .retryPolicy(new ExponentialBackoffRetry(1000, 5))    //重试策略
+                    .namespace("ZKLocks-NameSpace")  //命名空间
+                    .build();
+            // 启动客户端
+            client.start();
+            ownsClient = true;
+        }
         try {
             // 创建总节点
             if (client.checkExists().forPath("/" + ZK_LOCK_PROJECT) == null) {
@@ -72,87 +136,277 @@ public class DistributedLock_zk {
                         .withACL(ZooDefs.Ids.OPEN_ACL_UNSAFE)     //默认acl权限到
                         .forPath("/" + ZK_LOCK_PROJECT);
             }
-            // 监听锁的父节点下所有子节点的事件
-            addWatcherToLock("/" + ZK_LOCK_PROJECT);
         } catch (Exception e) {
             log.error("客户端连接zk失败...", e);
         }
     }
 
     /**
-     * 尝试获取分布式锁，获取成功则return，获取失败则阻塞并挂起当前线程
+     * 获取默认的分布式锁
+     *
+     * @see #getLock(String)
      */
-    public void getLock() {
-        // 死循环，当且仅当上一个锁释放、当前请求获取锁成功时才会跳出
-        while (true) {
-            try {
-                client.create()
-                        .creatingParentsIfNeeded()                //递归创建
-                        .withMode(CreateMode.EPHEMERAL)           //子节点必须使用临时节点
-                        .withACL(ZooDefs.Ids.OPEN_ACL_UNSAFE)     //默认acl权限到
-                        .forPath("/" + ZK_LOCK_PROJECT + "/" + DISTRIBUTED_LOCK);
-                log.info("获取分布式锁成功...");
-                return;
-            } catch (Exception e) {
-                // 锁节点已存在获取锁失败
-                log.info("获取分布式锁失败...");
+    public long getLock() {
+        return getLock(DISTRIBUTED_LOCK);
+    }
+
+    /**
+     * 获取 key 对应的分布式锁，获取成功则return，获取失败则阻塞并挂起当前线程，直到排在前面的请求都释放了锁
+     *
+     * @param key 业务key，例如订单号，不能包含 "/"
+     * @return 本次加锁的 fencing token
+     */
+    public long getLock(String key) {
+        return this.lock(key, -1L);
+    }
+
+    /**
+     * 获取 key 对应的分布式锁，最多等待 waitTime，超时后退出排队
+     *
+     * @param key      业务key，例如订单号，不能包含 "/"
+     * @param waitTime 最长等待时间，小于等于0时只检查一次排队位置
+     * @param unit     时间单位
+     * @return 本次加锁的 fencing token，超时返回0
+     */
+    public long tryLock(String key, long waitTime, TimeUnit unit) {
+        return this.lock(key, Math.max(0L, unit.toNanos(waitTime)));
+    }
+
+    /**
+     * @param timeoutNanos 最长等待时间，小于0时一直等待
+     */
+    private long lock(String key, long timeoutNanos) {
+        final String lockPath = lockPathOf(key);
+        final Map<String, Hold> held = currentLocks.get();
+        final Hold hold = held == null ? null : held.get(key);
+        if (hold != null) {
+            // 重入：不再排队
+            hold.count++;
+            return hold.token;
+        }
+        final long deadline = System.nanoTime() + timeoutNanos;
+        final long start = lockMetrics.start();
+        String ourPath = null;
+        try {
+            // 排队：创建临时顺序节点，key 节点不存在时以容器节点创建
+            final Stat stat = new Stat();
+            ourPath = this.enqueue(lockPath, stat);
+            final String ourNode = ourPath.substring(lockPath.length() + 1);
+            // 当且仅当当前节点排在第一位时才会跳出
+            while (true) {
+                List<String> children = client.getChildren().forPath(lockPath);
+                // 所有节点前缀相同，按名称排序即按序号排序
+                Collections.sort(children);
+                int index = children.indexOf(ourNode);
+                if (index < 0) {
+                    // 会话过期导致临时节点被删除
+                    throw new IllegalStateException("锁节点已丢失: " + ourPath);
+                }
+                if (index == 0) {
+                    Map<String, Hold> locks = currentLocks.get();
+                    if (locks == null) {
+                        locks = new HashMap<>(4);
+                        currentLocks.set(locks);
+                    }
+                    locks.put(key, new Hold(ourPath, stat.getCzxid()));
+                    lockMetrics.acquire(LockOperation.ZK_LOCK, key, start, true);
+                    log.info("获取分布式锁成功...");
+                    return stat.getCzxid();
+                }
+                long remaining = timeoutNanos < 0 ? Long.MAX_VALUE : deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    // 超时（或只检查一次），退出排队；此时还没有设置 watch
+                    lockMetrics.acquire(LockOperation.ZK_LOCK, key, start, false);
+                    deleteQuietly(ourPath);
+                    deleteIfEmpty(lockPath);
+                    return 0L;
+                }
+                // 只监听前一个节点，前一个节点删除时才唤醒当前请求
+                String predecessor = lockPath + "/" + children.get(index - 1);
+                CountDownLatch latch = new CountDownLatch(1);
+                Watcher watcher = event -> latch.countDown();
+                if (client.checkExists().usingWatcher(watcher).forPath(predecessor) == null) {
+                    // 前一个节点已经删除，exists 在不存在的路径上同样会留下 watch，移除后重新检查排队位置
+                    removeWatcher(predecessor, watcher);
+                    continue;
+                }
+                boolean notified = false;
                 try {
-                    // 若锁已被释放过，重置同步资源的值并挂起线程
-                    if (zkLockLatch.getCount() <= 0) {
-                        zkLockLatch = new CountDownLatch(1);
+                    if (timeoutNanos < 0) {
+                        // 调用await()方法的线程会被挂起，直到前一个节点被删除
+                        latch.await();
+                        notified = true;
+                    } else {
+                        notified = latch.await(remaining, TimeUnit.NANOSECONDS);
+                    }
+                } finally {
+                    if (!notified) {
+                        // 超时或被中断，watch 不会再被用到
+                        removeWatcher(predecessor, watcher);
                     }
-                    // 调用await()方法的线程（主线程）会被挂起，它会等待直到count值为0才继续执行
-                    zkLockLatch.await();
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
                 }
             }
+        } catch (Exception e) {
+            log.info("获取分布式锁失败...");
+            lockMetrics.acquire(LockOperation.ZK_LOCK, key, start, false);
+            deleteQuietly(ourPath);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("获取分布式锁失败", e);
         }
     }
 
 
     /**
-     * 删除锁节点，会触发zk监听器修改计数器进而释放分布式锁
+     * 释放默认的分布式锁
      *
-     * @return 释放成功返回true，否则返回false
+     * @see #releaseLock(String)
      */
     public boolean releaseLock() {
+        return releaseLock(DISTRIBUTED_LOCK);
+    }
+
+    /**
+     * 释放当前线程在 key 下的一次持有，持有次数减到0时删除锁节点，zk只通知排在它后面的那一个请求；
+     * 没有请求排队时顺带删除 key 节点
+     *
+     * @param key 业务key
+     * @return 释放成功返回true，否则返回false
+     */
+    public boolean releaseLock(String key) {
+        Map<String, Hold> locks = currentLocks.get();
+        Hold hold = locks == null ? null : locks.get(key);
+        if (hold == null) {
+            log.info("当前线程未持有分布式锁: {}", key);
+            return false;
+        }
+        if (--hold.count > 0) {
+            return true;
+        }
+        locks.remove(key);
+        if (locks.isEmpty()) {
+            currentLocks.remove();
+        }
+        final String ourPath = hold.path;
+        final long start = lockMetrics.start();
         try {
             // 删除锁节点
-            String lockPath = "/" + ZK_LOCK_PROJECT + "/" + DISTRIBUTED_LOCK;
-            if (client.checkExists().forPath(lockPath) != null) {
-                client.delete().forPath(lockPath);
-            }
+            client.delete().guaranteed().forPath(ourPath);
+        } catch (KeeperException.NoNodeException e) {
+            log.info("锁节点已不存在: {}", ourPath);
         } catch (Exception e) {
             log.info("分布式锁释放失败...");
             e.printStackTrace();
             return false;
         }
+        // zookeeper 3.5+ 的容器节点会由服务端自动清理，3.4 下退化为永久节点，这里主动删除空的 key 节点
+        deleteIfEmpty(lockPathOf(key));
+        lockMetrics.release(LockOperation.ZK_UNLOCK, key, start);
         log.info("分布式锁释放完成...");
         return true;
     }
 
+    /**
+     * @param key 业务key
+     * @return 当前线程持有 key 的锁返回true
+     */
+    public boolean isHeldByCurrentThread(String key) {
+        Map<String, Hold> locks = currentLocks.get();
+        return locks != null && locks.containsKey(key);
+    }
+
+    private static String lockPathOf(String key) {
+        if (key == null || key.isEmpty() || key.indexOf('/') >= 0) {
+            throw new IllegalArgumentException("非法的锁key: " + key);
+        }
+        return "/" + ZK_LOCK_PROJECT + "/" + key;
+    }
 
     /**
-     * 监听path节点
+     * 在 key 节点下创建排队节点
+     * releaseLock() 会删除空的 key 节点，可能恰好发生在 creatingParentContainersIfNeeded 创建父节点之后、
+     * 创建排队节点之前，此时得到 NoNodeException，重新创建即可
+     *
+     * @param stat 写入排队节点的 Stat，取其 czxid 作为fencing token
+     * @return 排队节点的完整路径
      */
-    public void addWatcherToLock(String path) throws Exception {
-        // 缓存此节点下所有子节点的状态信息
-        final PathChildrenCache cache = new PathChildrenCache(client, path, true);
-        cache.start(PathChildrenCache.StartMode.POST_INITIALIZED_EVENT);
-        // 添加回调监听器
-        cache.getListenable().addListener((client, event) -> {
-            // 监听删除子节点事件（释放锁）
-            if (event.getType().equals(PathChildrenCacheEvent.Type.CHILD_REMOVED)) {
-                String p = event.getData().getPath();
-                // 若是分布式锁节点
-                if (p.contains(DISTRIBUTED_LOCK)) {
-                    // 使count=0，释放锁
-                    zkLockLatch.countDown();
-                    log.info("已释放同步计数器，让当前请求获得分布式锁...");
+    private String enqueue(String lockPath, Stat stat) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return client.create()
+                        .storingStatIn(stat)                          //取得节点的czxid作为fencing token
+                        .creatingParentContainersIfNeeded()           //递归创建
+                        .withMode(CreateMode.EPHEMERAL_SEQUENTIAL)    //子节点必须使用临时节点
+                        .withACL(ZooDefs.Ids.OPEN_ACL_UNSAFE)         //默认acl权限到
+                        .forPath(lockPath + "/" + LOCK_NODE_PREFIX);
+            } catch (KeeperException.NoNodeException e) {
+                if (attempt >= ENQUEUE_ATTEMPTS) {
+                    throw e;
                 }
-                log.info("上一个会话已释放锁或已断开，锁节点路径：" + p);
+                log.info("锁节点被并发删除，重新排队: {}", lockPath);
             }
-        });
+        }
+    }
+
+    /**
+     * 移除不再需要的 watch，避免放弃排队的请求在 zk 会话上留下 watch 和 latch
+     * zookeeper 3.4 不支持移除 watch（Curator 以 3.4 兼容模式运行），只能等它在前一个节点删除时触发一次，对已放弃的 latch 没有影响
+     */
+    private void removeWatcher(String path, Watcher watcher) {
+        if (client.isZk34CompatibilityMode()) {
+            return;
+        }
+        try {
+            client.watches().remove(watcher).quietly().forPath(path);
+        } catch (Exception e) {
+            log.warn("移除 watch 失败: {}", path, e);
+        }
+    }
+
+    private void deleteIfEmpty(String lockPath) {
+        try {
+            client.delete().forPath(lockPath);
+        } catch (KeeperException.NotEmptyException | KeeperException.NoNodeException e) {
+            // 仍有请求在排队，或已被其他客户端删除
+        } catch (Exception e) {
+            log.warn("删除锁节点失败: {}", lockPath, e);
+        }
+    }
+
+    private void deleteQuietly(String path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            client.delete().guaranteed().forPath(path);
+        } catch (Exception e) {
+            log.warn("删除排队节点失败: {}", path, e);
+        }
+    }
+
+    /**
+     * 当前线程对一个 key 的持有
+     */
+    private static final class Hold {
+        private final String path;
+        private final long token;
+        private int count = 1;
+
+        private Hold(String path, long token) {
+            this.path = path;
+            this.token = token;
+        }
+    }
+
+    /**
+     * 关闭zk客户端
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (client != null && ownsClient) {
+            client.close();
+            ownsClient = false;
+        }
     }
 }
@@ -0,0 +1,93 @@
+package com.lee.distributedlock.util.backend;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryLockBackendTest {
+
+    private static final String KEY = "memory-test";
+
+    private InMemoryLockBackend backend;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryLockBackend(4);
+    }
+
+    @Test
+    public void lockIsExclusiveUntilReleased() {
+        long token = backend.tryAcquire(KEY, "a", 1000, 0, TimeUnit.MILLISECONDS);
+        assertTrue(token > 0);
+        assertEquals(0, backend.tryAcquire(KEY, "b", 1000, 0, TimeUnit.MILLISECONDS));
+
+        assertTrue(backend.release(KEY, "a"));
+        // fencing token 单调递增
+        assertTrue(backend.tryAcquire(KEY, "b", 1000, 0, TimeUnit.MILLISECONDS) > token);
+    }
+
+    @Test
+    public void releaseByAnotherOwnerIsIgnored() {
+        assertTrue(backend.tryAcquire(KEY, "a", 1000, 0, TimeUnit.MILLISECONDS) > 0);
+
+        assertFalse(backend.release(KEY, "b"));
+        assertEquals(0, backend.tryAcquire(KEY, "c", 1000, 0, TimeUnit.MILLISECONDS));
+        assertEquals(1, backend.size());
+    }
+
+    @Test
+    public void waiterIsWokenByRelease() throws Exception {
+        assertTrue(backend.tryAcquire(KEY, "a", 5000, 0, TimeUnit.MILLISECONDS) > 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> waiter = executor.submit(() -> backend.tryAcquire(KEY, "b", 5000, 5000, TimeUnit.MILLISECONDS));
+            Thread.sleep(100);
+            assertFalse(waiter.isDone());
+
+            backend.release(KEY, "a");
+            assertTrue(waiter.get(1, TimeUnit.SECONDS) > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void renewKeepsLeaseAlive() throws InterruptedException {
+        assertTrue(backend.tryAcquire(KEY, "a", 200, 0, TimeUnit.MILLISECONDS) > 0);
+        // 手动续期，超过两个租约时长后仍然持有
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(100);
+            assertTrue(backend.renew(KEY, "a", 200, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(0, backend.tryAcquire(KEY, "b", 200, 0, TimeUnit.MILLISECONDS));
+        assertTrue(backend.release(KEY, "a"));
+    }
+
+    @Test
+    public void expiredLeaseCanBeTakenOver() throws InterruptedException {
+        assertTrue(backend.tryAcquire(KEY, "a", 200, 0, TimeUnit.MILLISECONDS) > 0);
+        // 不自动续期，租约按截止时间到期
+        Thread.sleep(300);
+
+        assertTrue(backend.tryAcquire(KEY, "b", 1000, 0, TimeUnit.MILLISECONDS) > 0);
+        assertFalse(backend.release(KEY, "a"));
+        assertFalse(backend.renew(KEY, "a", 1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void waiterTakesOverExpiredLease() throws InterruptedException {
+        assertTrue(backend.tryAcquire(KEY, "a", 200, 0, TimeUnit.MILLISECONDS) > 0);
+        // 持有者忘记解锁，等待者最多等到租约到期
+        long start = System.nanoTime();
+        assertTrue(backend.tryAcquire(KEY, "b", 1000, 2000, TimeUnit.MILLISECONDS) > 0);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+}
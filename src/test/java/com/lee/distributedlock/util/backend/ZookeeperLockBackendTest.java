@@ -0,0 +1,76 @@
+package com.lee.distributedlock.util.backend;
+
+import com.lee.distributedlock.util.zk.DistributedLock_zk;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ZookeeperLockBackendTest {
+
+    private static final String KEY = "zk-test";
+
+    private StubLock zkLock;
+    private ZookeeperLockBackend backend;
+
+    @Before
+    public void setUp() {
+        zkLock = new StubLock();
+        backend = new ZookeeperLockBackend(zkLock);
+    }
+
+    @Test
+    public void releaseWithoutAcquireIsIgnored() {
+        assertFalse(backend.release(KEY, "a"));
+        assertEquals(0, zkLock.releases.get());
+    }
+
+    @Test
+    public void failedNestedCallDoesNotReleaseOuterNode() {
+        assertTrue(backend.tryAcquire(KEY, "outer", 0, 1, TimeUnit.SECONDS) > 0);
+        // 同一线程的嵌套调用在自己的节点上排队超时
+        zkLock.token = 0;
+        assertEquals(0, backend.tryAcquire(KEY, "inner", 0, 1, TimeUnit.SECONDS));
+
+        assertFalse(backend.release(KEY, "inner"));
+        assertEquals(0, zkLock.releases.get());
+        assertTrue(backend.release(KEY, "outer"));
+        assertEquals(1, zkLock.releases.get());
+    }
+
+    @Test
+    public void reentrantHoldsAreReleasedOncePerAcquire() {
+        backend.tryAcquire(KEY, "a", 0, 1, TimeUnit.SECONDS);
+        backend.tryAcquire(KEY, "a", 0, 1, TimeUnit.SECONDS);
+
+        assertTrue(backend.release(KEY, "a"));
+        assertTrue(backend.release(KEY, "a"));
+        assertFalse(backend.release(KEY, "a"));
+        assertEquals(2, zkLock.releases.get());
+    }
+
+    /**
+     * 不连接 zookeeper，按 token 返回加锁结果并记录释放次数
+     */
+    private static final class StubLock extends DistributedLock_zk {
+
+        private final AtomicInteger releases = new AtomicInteger();
+        private volatile long token = 1;
+
+        @Override
+        public long tryLock(String key, long waitTime, TimeUnit unit) {
+            return token;
+        }
+
+        @Override
+        public boolean releaseLock(String key) {
+            releases.incrementAndGet();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.lee.distributedlock.util.metrics;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HotKeyProfilerTest {
+
+    @Test
+    public void contendedKeyOutranksFrequentUncontendedKeys() {
+        HotKeyProfiler profiler = new HotKeyProfiler(true, 2, 4096, 60);
+        for (int i = 0; i < 1000; i++) {
+            profiler.acquired("cheap:1", profiler.start(), true);
+            profiler.acquired("cheap:2", profiler.start(), true);
+        }
+        for (int i = 0; i < 10; i++) {
+            profiler.acquired("hot:1", profiler.start(), false);
+        }
+
+        // 调用次数多但没有竞争的 key 不能把竞争激烈的 key 挤出名单
+        List<Map<String, Object>> top = profiler.topKeys();
+        assertEquals("hot:1", top.get(0).get("key"));
+        assertTrue((Long) top.get(0).get("failures") > 0);
+    }
+
+    @Test
+    public void keysAreRankedByFailuresAndWaitTime() {
+        HotKeyProfiler profiler = new HotKeyProfiler(true, 2, 4096, 60);
+        for (int i = 0; i < 5; i++) {
+            profiler.acquired("rejected:1", profiler.start(), false);
+        }
+        // 等了 50ms 才拿到锁，分数约为 50
+        profiler.acquired("waited:1", System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(50), true);
+
+        List<Map<String, Object>> top = profiler.topKeys();
+        assertEquals("waited:1", top.get(0).get("key"));
+        assertEquals("rejected:1", top.get(1).get("key"));
+    }
+
+    @Test
+    public void moreContendedKeyReplacesLeastContended() {
+        HotKeyProfiler profiler = new HotKeyProfiler(true, 1, 4096, 60);
+        profiler.acquired("warm:1", profiler.start(), false);
+        for (int i = 0; i < 3; i++) {
+            profiler.acquired("hot:1", profiler.start(), false);
+        }
+
+        List<Map<String, Object>> top = profiler.topKeys();
+        assertEquals(1, top.size());
+        assertEquals("hot:1", top.get(0).get("key"));
+        assertTrue((Long) top.get(0).get("contentionScore") >= 3);
+    }
+}
@@ -0,0 +1,63 @@
+package com.lee.distributedlock.util.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LockMetricsTest {
+
+    private MeterRegistry registry;
+    private LockMetrics lockMetrics;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", registry);
+        lockMetrics = new LockMetrics(beanFactory.getBeanProvider(MeterRegistry.class), true);
+    }
+
+    @Test
+    public void boundPrefixWinsOverKeyText() {
+        // @CacheLock 文档中的例子，前缀本身含有 ':'
+        String previous = lockMetrics.bindPrefix("N:SO1008:500");
+        try {
+            assertEquals("N:SO1008:500", lockMetrics.prefixOf("N:SO1008:500:42"));
+        } finally {
+            lockMetrics.restorePrefix(previous);
+        }
+        assertEquals("N", lockMetrics.prefixOf("N:SO1008:500:42"));
+    }
+
+    @Test
+    public void nestedBindingsAreRestored() {
+        String outer = lockMetrics.bindPrefix("order");
+        String inner = lockMetrics.bindPrefix("stock");
+        assertEquals("stock", lockMetrics.prefixOf("any"));
+
+        lockMetrics.restorePrefix(inner);
+        assertEquals("order", lockMetrics.prefixOf("any"));
+        lockMetrics.restorePrefix(outer);
+        assertEquals("other", lockMetrics.prefixOf("any"));
+    }
+
+    @Test
+    public void rejectionsAreTaggedWithPrefix() {
+        lockMetrics.rejected("N:SO1008:500");
+        lockMetrics.rejected("N:SO1008:500");
+
+        assertEquals(2.0, registry.get("distributed.lock.rejected").tag("prefix", "N:SO1008:500").counter().count(), 0);
+    }
+
+    @Test
+    public void disabledMetricsIgnoreBinding() {
+        LockMetrics disabled = LockMetrics.disabled();
+        assertNull(disabled.bindPrefix("order"));
+        assertNull(disabled.prefixOf("order:1"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.lee.distributedlock.util.redis;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocalLockCoalescerTest {
+
+    private static final String KEY = "coalescer-test";
+
+    @Test
+    public void permitIsExclusivePerKey() {
+        LocalLockCoalescer coalescer = new LocalLockCoalescer(true, 16);
+        assertTrue(coalescer.acquire(KEY, "a", 0));
+        assertFalse(coalescer.acquire(KEY, "b", 0));
+        assertTrue(coalescer.acquire(KEY + 2, "b", 0));
+
+        coalescer.release(KEY, "a");
+        assertTrue(coalescer.acquire(KEY, "b", 0));
+    }
+
+    @Test
+    public void releaseByNonHolderIsIgnored() {
+        LocalLockCoalescer coalescer = new LocalLockCoalescer(true, 16);
+        assertTrue(coalescer.acquire(KEY, "a", 0));
+        // 被拒绝的调用也走到解锁，不能归还持有者的许可
+        assertFalse(coalescer.acquire(KEY, "b", 0));
+        coalescer.release(KEY, "b");
+
+        assertFalse(coalescer.acquire(KEY, "c", 0));
+    }
+
+    @Test
+    public void idleKeysAreRemoved() {
+        LocalLockCoalescer coalescer = new LocalLockCoalescer(true, 16);
+        assertTrue(coalescer.acquire(KEY, "a", 0));
+        assertFalse(coalescer.acquire(KEY, "b", 0));
+        assertEquals(1, coalescer.size());
+
+        coalescer.release(KEY, "a");
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void keysBeyondLimitAreNotCoalesced() {
+        LocalLockCoalescer coalescer = new LocalLockCoalescer(true, 1);
+        assertTrue(coalescer.acquire(KEY, "a", 0));
+
+        assertTrue(coalescer.acquire(KEY + 2, "b", 0));
+        assertTrue(coalescer.acquire(KEY + 2, "c", 0));
+        assertEquals(1, coalescer.size());
+    }
+
+    @Test
+    public void disabledCoalescerAlwaysGrants() {
+        LocalLockCoalescer coalescer = new LocalLockCoalescer(false, 16);
+        assertTrue(coalescer.acquire(KEY, "a", 0));
+        assertTrue(coalescer.acquire(KEY, "b", 0));
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void concurrentReleasesReturnPermitOnce() throws InterruptedException {
+        LocalLockCoalescer coalescer = new LocalLockCoalescer(true, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                String owner = "a" + i;
+                assertTrue(coalescer.acquire(KEY, owner, 0));
+                // 另一个等待者让 entry 在归还后仍然存在
+                assertFalse(coalescer.acquire(KEY, "waiter", 0));
+                CountDownLatch start = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(2);
+                for (int t = 0; t < 2; t++) {
+                    // 解锁与租约丢失回调同时归还同一次持有
+                    String sameOwner = new String(owner);
+                    executor.execute(() -> {
+                        try {
+                            start.await();
+                            coalescer.release(KEY, sameOwner);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                }
+                start.countDown();
+                assertTrue(done.await(1, TimeUnit.SECONDS));
+
+                assertTrue(coalescer.acquire(KEY, "b", 0));
+                assertFalse(coalescer.acquire(KEY, "c", 0));
+                coalescer.release(KEY, "b");
+                assertEquals(0, coalescer.size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.lee.distributedlock.util.redis;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LockValuesTest {
+
+    private static final long DEADLINE = 1_700_000_000_123L;
+
+    @Test
+    public void textValueMatchesLegacyFormat() {
+        byte[] value = LockValues.encodeText(DEADLINE, "owner-1");
+
+        // 旧版本按 "时间戳|uuid" 解析
+        String text = new String(value, StandardCharsets.UTF_8);
+        assertEquals(DEADLINE + "|owner-1", text);
+        assertEquals(DEADLINE, Long.parseLong(text.split("\\|")[0]));
+    }
+
+    @Test
+    public void bothFormatsDecode() {
+        assertEquals(DEADLINE, LockValues.deadlineOf(LockValues.encode(DEADLINE, "owner-1")));
+        assertEquals(DEADLINE, LockValues.deadlineOf(LockValues.encodeText(DEADLINE, "owner-1")));
+        assertEquals(7L, LockValues.deadlineOf(LockValues.encodeText(7L, "owner-1")));
+    }
+
+    @Test
+    public void bothFormatsEndWithOwner() {
+        String suffix = "|持有者";
+        assertTrue(new String(LockValues.encode(DEADLINE, "持有者"), StandardCharsets.UTF_8).endsWith(suffix));
+        assertTrue(new String(LockValues.encodeText(DEADLINE, "持有者"), StandardCharsets.UTF_8).endsWith(suffix));
+        assertEquals(DEADLINE, LockValues.deadlineOf(LockValues.encode(DEADLINE, "持有者")));
+    }
+}
@@ -0,0 +1,175 @@
+package com.lee.distributedlock.util.redis;
+
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RedisLockHelperTest {
+
+    private static final String KEY = "helper-test";
+
+    private RedisNodes nodes;
+    private LeaseWatchdog leaseWatchdog;
+    private LockReleaseSubscriber releaseSubscriber;
+    private HeldKeyCache heldKeyCache;
+    private LocalLockCoalescer localLocks;
+    private RedisLockHelper helper;
+
+    @Before
+    public void setUp() {
+        nodes = new RedisNodes(1);
+        leaseWatchdog = new LeaseWatchdog(10, 1, 1024, 16, LockMetrics.disabled());
+        releaseSubscriber = new LockReleaseSubscriber(nodes.factories().get(0));
+        releaseSubscriber.afterPropertiesSet();
+        heldKeyCache = new HeldKeyCache(true, 16);
+        ReflectionTestUtils.setField(heldKeyCache, "releaseSubscriber", releaseSubscriber);
+        heldKeyCache.afterPropertiesSet();
+        localLocks = new LocalLockCoalescer(true, 16);
+
+        helper = new RedisLockHelper();
+        ReflectionTestUtils.setField(helper, "redisTemplate", nodes.template(0));
+        ReflectionTestUtils.setField(helper, "leaseWatchdog", leaseWatchdog);
+        ReflectionTestUtils.setField(helper, "releaseSubscriber", releaseSubscriber);
+        ReflectionTestUtils.setField(helper, "lockMetrics", LockMetrics.disabled());
+        ReflectionTestUtils.setField(helper, "heldKeyCache", heldKeyCache);
+        ReflectionTestUtils.setField(helper, "localLocks", localLocks);
+        ReflectionTestUtils.setField(helper, "reactiveRedisTemplate", new ReactiveStringRedisTemplate(nodes.factories().get(0)));
+        helper.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        releaseSubscriber.destroy();
+        leaseWatchdog.destroy();
+        nodes.close();
+    }
+
+    @Test
+    public void fenceKeySharesSlotWithLockKey() {
+        assertEquals("{order:42}:fence", RedisLockHelper.fenceKeyOf("order:42"));
+        // 已经带 hash tag 的 key 沿用自己的 tag
+        assertEquals("{order}:42:fence", RedisLockHelper.fenceKeyOf("{order}:42"));
+    }
+
+    @Test
+    public void fencingTokensIncreasePerKey() {
+        long first = helper.lockFenced(KEY, "a", 1000, 0, TimeUnit.MILLISECONDS);
+        assertTrue(first > 0);
+        helper.unlock(KEY, "a");
+
+        long second = helper.lockFenced(KEY, "b", 1000, 0, TimeUnit.MILLISECONDS);
+        assertTrue(second > first);
+        assertNotNull(nodes.template(0).opsForValue().get(RedisLockHelper.fenceKeyOf(KEY)));
+    }
+
+    @Test
+    public void plainLockDoesNotCreateFenceCounter() {
+        assertTrue(helper.lock(KEY, "a", 1000, 0, TimeUnit.MILLISECONDS));
+        assertEquals(RedisLockHelper.UNFENCED, helper.lockReentrant(KEY + 2, 1000, 0, TimeUnit.MILLISECONDS, false));
+        assertTrue(helper.unlockReentrant(KEY + 2));
+
+        assertNull(nodes.template(0).opsForValue().get(RedisLockHelper.fenceKeyOf(KEY)));
+        assertNull(nodes.template(0).opsForValue().get(RedisLockHelper.fenceKeyOf(KEY + 2)));
+        assertFalse(helper.lock(KEY, "b", 1000, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void reentrantLockIsReleasedByOutermostExit() {
+        long token = helper.lockReentrant(KEY, 1000, 0, TimeUnit.MILLISECONDS);
+        assertTrue(token > 0);
+        assertEquals(token, helper.lockReentrant(KEY, 1000, 0, TimeUnit.MILLISECONDS));
+
+        assertTrue(helper.unlockReentrant(KEY));
+        assertEquals(LockOwners.currentThread(), nodes.template(0).opsForValue().get(KEY));
+        assertTrue(helper.unlockReentrant(KEY));
+        assertNull(nodes.template(0).opsForValue().get(KEY));
+    }
+
+    @Test
+    public void unlockWithoutHoldKeepsOtherThreadsLock() throws Exception {
+        assertTrue(helper.lockReentrant(KEY, 1000, 0, TimeUnit.MILLISECONDS) > 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(0L, (long) executor.submit(
+                    () -> helper.lockReentrant(KEY, 1000, 0, TimeUnit.MILLISECONDS)).get());
+            assertFalse(executor.submit(() -> helper.unlockReentrant(KEY)).get());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(LockOwners.currentThread(), nodes.template(0).opsForValue().get(KEY));
+        assertTrue(helper.unlockReentrant(KEY));
+    }
+
+    @Test
+    public void failedReleaseKeepsNearCacheEntry() {
+        // 锁由其他节点持有，本节点的失败加锁把它记入近端缓存
+        nodes.template(0).opsForValue().set(KEY, "a", 5, TimeUnit.SECONDS);
+        assertEquals(0, helper.lockFenced(KEY, "b", 1000, 0, TimeUnit.MILLISECONDS));
+        assertTrue(heldKeyCache.isHeld(KEY));
+
+        assertFalse(helper.release(KEY, "b"));
+        // 重复提交仍在本地被拒绝
+        assertTrue(heldKeyCache.isHeld(KEY));
+        assertEquals(0, helper.lockFenced(KEY, "c", 1000, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void reactiveLockSharesNearCache() {
+        nodes.template(0).opsForValue().set(KEY, "a", 5, TimeUnit.SECONDS);
+        assertFalse(helper.lockReactive(KEY, "b", 1000, 0, TimeUnit.MILLISECONDS).block());
+        assertTrue(heldKeyCache.isHeld(KEY));
+
+        nodes.template(0).delete(KEY);
+        // 缓存条目仍在，重复提交在本地被拒绝
+        assertFalse(helper.lockReactive(KEY, "c", 1000, 0, TimeUnit.MILLISECONDS).block());
+        heldKeyCache.invalidate(KEY);
+        assertTrue(helper.lockReactive(KEY, "c", 1000, 0, TimeUnit.MILLISECONDS).block());
+
+        // 非阻塞 API 不签发 fencing token
+        assertNull(nodes.template(0).opsForValue().get(RedisLockHelper.fenceKeyOf(KEY)));
+        heldKeyCache.held(KEY, 5000);
+        assertTrue(helper.unlockReactive(KEY, "c").block());
+        assertFalse(heldKeyCache.isHeld(KEY));
+    }
+
+    @Test
+    public void localPermitIsReturnedWhenAcquireFails() {
+        nodes.stop(0);
+        try {
+            helper.lockFenced(KEY, "a", 1000, 0, TimeUnit.MILLISECONDS);
+            fail("redis 已停止");
+        } catch (RuntimeException expected) {
+            // 连接失败
+        }
+        assertTrue(localLocks.acquire(KEY, "b", 0));
+    }
+
+    @Test
+    public void localPermitIsReturnedWhenUnlockFails() {
+        assertTrue(helper.lockFenced(KEY, "a", 1000, 0, TimeUnit.MILLISECONDS) > 0);
+        nodes.stop(0);
+        try {
+            helper.unlock(KEY, "a");
+            fail("redis 已停止");
+        } catch (RuntimeException expected) {
+            // 连接失败
+        }
+        assertTrue(localLocks.acquire(KEY, "b", 0));
+        assertEquals(0, leaseWatchdog.size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.lee.distributedlock.util.redis;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试用的一组进程内 redis 实例，每个实例一个连接工厂
+ */
+final class RedisNodes implements AutoCloseable {
+
+    private final List<RedisServer> servers = new ArrayList<>();
+    private final List<LettuceConnectionFactory> factories = new ArrayList<>();
+    private final List<StringRedisTemplate> templates = new ArrayList<>();
+
+    RedisNodes(int count) {
+        for (int i = 0; i < count; i++) {
+            int port = freePort();
+            RedisServer server = new RedisServer(port);
+            server.start();
+            servers.add(server);
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                    new RedisStandaloneConfiguration("127.0.0.1", port),
+                    LettuceClientConfiguration.builder().commandTimeout(Duration.ofMillis(200)).build());
+            factory.afterPropertiesSet();
+            factories.add(factory);
+            templates.add(new StringRedisTemplate(factory));
+        }
+    }
+
+    List<LettuceConnectionFactory> factories() {
+        return factories;
+    }
+
+    StringRedisTemplate template(int index) {
+        return templates.get(index);
+    }
+
+    void stop(int index) {
+        servers.get(index).stop();
+    }
+
+    @Override
+    public void close() {
+        for (LettuceConnectionFactory factory : factories) {
+            factory.destroy();
+        }
+        for (RedisServer server : servers) {
+            server.stop();
+        }
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.lee.distributedlock.util.redis;
+
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.redis.task.LeaseWatchdog;
+import com.lee.distributedlock.util.redis.task.PostponeTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RedisRedlockTest {
+
+    private static final String KEY = "redlock-test";
+    private static final long NODE_TIMEOUT_MILLIS = 100;
+
+    private RedisNodes nodes;
+    private LeaseWatchdog leaseWatchdog;
+    private RedisRedlock redlock;
+
+    @Before
+    public void setUp() {
+        nodes = new RedisNodes(3);
+        leaseWatchdog = new LeaseWatchdog(10, 1, 1024, 16, LockMetrics.disabled());
+        redlock = new RedisRedlock(nodes.factories(), NODE_TIMEOUT_MILLIS, leaseWatchdog);
+    }
+
+    @After
+    public void tearDown() {
+        redlock.destroy();
+        leaseWatchdog.destroy();
+        nodes.close();
+    }
+
+    @Test
+    public void lockIsExclusiveAcrossAllNodes() {
+        assertTrue(redlock.tryLock(KEY, "a", 1000, TimeUnit.MILLISECONDS) > 0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("a", nodes.template(i).opsForValue().get(KEY));
+        }
+        assertEquals(0, redlock.tryLock(KEY, "b", 1000, TimeUnit.MILLISECONDS));
+
+        redlock.unlock(KEY, "a");
+        assertTrue(redlock.tryLock(KEY, "b", 1000, TimeUnit.MILLISECONDS) > 0);
+    }
+
+    @Test
+    public void failedAttemptLeavesNoPartialLock() {
+        // 另一个持有者占住两个实例，多数派不可能达成
+        nodes.template(1).opsForValue().set(KEY, "other");
+        nodes.template(2).opsForValue().set(KEY, "other");
+
+        assertEquals(0, redlock.tryLock(KEY, "a", 1000, TimeUnit.MILLISECONDS));
+        assertNull(nodes.template(0).opsForValue().get(KEY));
+    }
+
+    @Test
+    public void quorumSurvivesOneNodeDown() {
+        nodes.stop(2);
+        assertTrue(redlock.tryLock(KEY, "a", 1000, TimeUnit.MILLISECONDS) > 0);
+        assertEquals(0, redlock.tryLock(KEY, "b", 1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void watchdogRenewsOnAllNodes() throws InterruptedException {
+        assertTrue(redlock.tryLock(KEY, "a", 600, TimeUnit.MILLISECONDS) > 0);
+        // 超过两个租约时长后仍然持有
+        Thread.sleep(1500);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("a", nodes.template(i).opsForValue().get(KEY));
+        }
+        assertEquals(0, redlock.tryLock(KEY, "b", 600, TimeUnit.MILLISECONDS));
+
+        redlock.unlock(KEY, "a");
+        Thread.sleep(500);
+        for (int i = 0; i < 3; i++) {
+            assertNull(nodes.template(i).opsForValue().get(KEY));
+        }
+    }
+
+    @Test
+    public void leaseTooShortForRenewalIsRejected() {
+        // 有效时间撑不到第一次续期完成（2/3 租约 + tick + nodeTimeout）
+        assertEquals(0, redlock.tryLock(KEY, "a", 200, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 3; i++) {
+            assertNull(nodes.template(i).opsForValue().get(KEY));
+        }
+        assertFalse(leaseWatchdog.leases().iterator().hasNext());
+    }
+
+    @Test
+    public void batchRenewalNeedsQuorumPerLease() {
+        assertTrue(redlock.tryLock(KEY, "a", 5000, TimeUnit.MILLISECONDS) > 0);
+        assertTrue(redlock.tryLock(KEY + 2, "a", 5000, TimeUnit.MILLISECONDS) > 0);
+        // 第二把锁在多数派实例上已丢失
+        nodes.template(0).delete(KEY + 2);
+        nodes.template(1).delete(KEY + 2);
+
+        List<PostponeTask> leases = new ArrayList<>(leaseWatchdog.leases());
+        List<PostponeTask> lost = redlock.renewAll(leases);
+        assertEquals(1, lost.size());
+        assertEquals(KEY + 2, lost.get(0).getKey());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void batchRenewalWithoutQuorumIsRetried() {
+        assertTrue(redlock.tryLock(KEY, "a", 5000, TimeUnit.MILLISECONDS) > 0);
+        nodes.stop(1);
+        nodes.stop(2);
+
+        redlock.renewAll(new ArrayList<>(leaseWatchdog.leases()));
+    }
+}
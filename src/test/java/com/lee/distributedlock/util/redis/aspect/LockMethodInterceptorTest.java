@@ -0,0 +1,170 @@
+package com.lee.distributedlock.util.redis.aspect;
+
+import com.lee.distributedlock.util.backend.InMemoryLockBackend;
+import com.lee.distributedlock.util.backend.LockBackend;
+import com.lee.distributedlock.util.backend.LockBackends;
+import com.lee.distributedlock.util.metrics.HotKeyProfiler;
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import com.lee.distributedlock.util.redis.annotation.CacheLock;
+import com.lee.distributedlock.util.redis.annotation.CacheParam;
+import com.lee.distributedlock.util.redis.annotation.LockBackendType;
+import com.lee.distributedlock.util.redis.keyGenerator.LockKeyGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 用内存引擎（backend = MEMORY）驱动 @CacheLock 切面，不需要 redis
+ */
+public class LockMethodInterceptorTest {
+
+    private static final String KEY = "order:42";
+
+    private CountingBackend backend;
+    private Orders orders;
+
+    @Before
+    public void setUp() {
+        backend = new CountingBackend(new InMemoryLockBackend(4));
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("inMemoryLockBackend", backend);
+
+        LockMethodInterceptor interceptor = new LockMethodInterceptor();
+        ReflectionTestUtils.setField(interceptor, "lockBackends",
+                new LockBackends(beanFactory.getBeanProvider(LockBackend.class)));
+        ReflectionTestUtils.setField(interceptor, "lockMetrics", LockMetrics.disabled());
+        ReflectionTestUtils.setField(interceptor, "hotKeyProfiler", new HotKeyProfiler(false, 20, 4096, 60));
+        ReflectionTestUtils.setField(interceptor, "cacheKeyGenerator", new LockKeyGenerator());
+
+        Orders target = new Orders(backend);
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(interceptor);
+        orders = factory.getProxy();
+        target.self = orders;
+    }
+
+    @Test
+    public void lockIsHeldDuringCallAndReleasedAfter() {
+        assertTrue(orders.submit(42));
+        assertEquals(1, backend.releases.get());
+        assertTrue(backend.tryAcquire(KEY, "other", 1000, 0, TimeUnit.MILLISECONDS) > 0);
+    }
+
+    @Test
+    public void fencingTokenIsBoundDuringCall() {
+        long token = orders.token(42);
+        assertTrue(token > 0);
+        assertEquals(0, LockContext.currentToken());
+    }
+
+    @Test
+    public void rejectedCallDoesNotReleaseHeldLock() {
+        assertEquals("重复提交", orders.submitTwice(42));
+        // 只有外层调用解锁
+        assertEquals(1, backend.releases.get());
+        assertTrue(backend.tryAcquire(KEY, "other", 1000, 0, TimeUnit.MILLISECONDS) > 0);
+    }
+
+    @Test
+    public void duplicateFromAnotherCallerIsRejectedWithoutRelease() {
+        assertTrue(backend.tryAcquire(KEY, "other", 1000, 0, TimeUnit.MILLISECONDS) > 0);
+        try {
+            orders.submit(42);
+            fail("持有者不同，应判为重复提交");
+        } catch (RuntimeException e) {
+            assertEquals("重复提交", e.getMessage());
+        }
+        assertEquals(0, backend.releases.get());
+        assertEquals(0, backend.tryAcquire(KEY, "third", 1000, 0, TimeUnit.MILLISECONDS));
+    }
+
+    public static class Orders {
+
+        private final LockBackend backend;
+        // 经过切面的代理，用于嵌套调用
+        private Orders self;
+
+        public Orders() {
+            this(null);
+        }
+
+        Orders(LockBackend backend) {
+            this.backend = backend;
+        }
+
+        /**
+         * @return 执行期间锁是否被持有
+         */
+        @CacheLock(prefix = "order", backend = LockBackendType.MEMORY)
+        public boolean submit(@CacheParam(name = "id") long id) {
+            return backend.tryAcquire("order:" + id, "probe", 1000, 0, TimeUnit.MILLISECONDS) == 0;
+        }
+
+        @CacheLock(prefix = "order", backend = LockBackendType.MEMORY)
+        public long token(@CacheParam(name = "id") long id) {
+            return LockContext.currentToken();
+        }
+
+        /**
+         * 持有锁时嵌套调用同一个 key，内层被判为重复提交，外层仍然持有锁
+         */
+        @CacheLock(prefix = "order", backend = LockBackendType.MEMORY)
+        public String submitTwice(@CacheParam(name = "id") long id) {
+            String result;
+            try {
+                self.submit(id);
+                result = "accepted";
+            } catch (RuntimeException e) {
+                result = e.getMessage();
+            }
+            if (backend.tryAcquire("order:" + id, "probe", 1000, 0, TimeUnit.MILLISECONDS) != 0) {
+                return "released";
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 记录 release() 的调用次数
+     */
+    private static final class CountingBackend implements LockBackend {
+
+        private final LockBackend delegate;
+        private final AtomicInteger releases = new AtomicInteger();
+
+        private CountingBackend(LockBackend delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public LockBackendType type() {
+            return delegate.type();
+        }
+
+        @Override
+        public long tryAcquire(String key, String owner, long leaseTime, long waitTime, TimeUnit unit) {
+            return delegate.tryAcquire(key, owner, leaseTime, waitTime, unit);
+        }
+
+        @Override
+        public boolean renew(String key, String owner, long leaseTime, TimeUnit unit) {
+            return delegate.renew(key, owner, leaseTime, unit);
+        }
+
+        @Override
+        public boolean release(String key, String owner) {
+            releases.incrementAndGet();
+            return delegate.release(key, owner);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.lee.distributedlock.util.redis.task;
+
+import com.lee.distributedlock.util.metrics.LockMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LeaseWatchdogTest {
+
+    private static final String KEY = "watchdog-test";
+    private static final LeaseRenewer ALWAYS_RENEWED = (key, owner, leaseMillis) -> true;
+
+    private LeaseWatchdog leaseWatchdog;
+
+    @Before
+    public void setUp() {
+        leaseWatchdog = new LeaseWatchdog(10, 1, 2, 16, LockMetrics.disabled());
+    }
+
+    @After
+    public void tearDown() {
+        leaseWatchdog.destroy();
+    }
+
+    @Test
+    public void reentryCountsHolds() {
+        assertTrue(leaseWatchdog.watch(KEY, "a", 1000, ALWAYS_RENEWED, 7L));
+        PostponeTask task = leaseWatchdog.reenter(KEY, "a");
+        assertNotNull(task);
+        assertEquals(7L, task.getToken());
+
+        assertEquals(1, leaseWatchdog.exit(KEY, "a"));
+        assertEquals(0, leaseWatchdog.exit(KEY, "a"));
+    }
+
+    @Test
+    public void unknownOwnerCannotReenterOrExit() {
+        assertTrue(leaseWatchdog.watch(KEY, "a", 1000, ALWAYS_RENEWED));
+
+        assertNull(leaseWatchdog.reenter(KEY, "b"));
+        assertEquals(-1, leaseWatchdog.exit(KEY, "b"));
+    }
+
+    @Test
+    public void watchFailsWhenRegistryIsFull() {
+        assertTrue(leaseWatchdog.watch(KEY + 1, "a", 1000, ALWAYS_RENEWED));
+        assertTrue(leaseWatchdog.watch(KEY + 2, "a", 1000, ALWAYS_RENEWED));
+
+        assertFalse(leaseWatchdog.watch(KEY + 3, "a", 1000, ALWAYS_RENEWED));
+        assertEquals(2, leaseWatchdog.size());
+    }
+
+    @Test
+    public void lostLeaseIsRemovedAndReported() throws InterruptedException {
+        CountDownLatch lost = new CountDownLatch(1);
+        leaseWatchdog.addLeaseLostListener((key, owner) -> {
+            if (KEY.equals(key) && "a".equals(owner)) {
+                lost.countDown();
+            }
+        });
+        assertTrue(leaseWatchdog.watch(KEY, "a", 60, (key, owner, leaseMillis) -> false));
+
+        assertTrue(lost.await(1, TimeUnit.SECONDS));
+        assertEquals(0, leaseWatchdog.size());
+    }
+
+    @Test
+    public void failedRenewalIsRetriedOnNextTick() throws InterruptedException {
+        List<Long> calls = new CopyOnWriteArrayList<>();
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch retried = new CountDownLatch(2);
+        assertTrue(leaseWatchdog.watch(KEY, "a", 600, (key, owner, leaseMillis) -> {
+            calls.add(System.nanoTime());
+            retried.countDown();
+            if (attempts.getAndIncrement() == 0) {
+                throw new IllegalStateException("redis 暂时不可用");
+            }
+            return true;
+        }));
+
+        assertTrue(retried.await(2, TimeUnit.SECONDS));
+        // 不等下一个续期周期（400ms）
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(calls.get(1) - calls.get(0)) < 200);
+        assertEquals(1, leaseWatchdog.size());
+    }
+
+    @Test
+    public void cancelStopsRenewal() throws InterruptedException {
+        AtomicInteger renewals = new AtomicInteger();
+        assertTrue(leaseWatchdog.watch(KEY, "a", 60, (key, owner, leaseMillis) -> renewals.incrementAndGet() > 0));
+        leaseWatchdog.cancel(KEY, "a");
+
+        Thread.sleep(200);
+        assertEquals(0, renewals.get());
+        assertEquals(0, leaseWatchdog.size());
+    }
+}